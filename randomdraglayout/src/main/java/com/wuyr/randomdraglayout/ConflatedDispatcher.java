@@ -0,0 +1,124 @@
+package com.wuyr.randomdraglayout;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 在指定的Executor中回调OnDragListener和OnStateChangeListener
+ * 主线程只负责写入最新的坐标、角度和状态 (单槽位，无锁，不分配内存)，
+ * Executor每次只取最新的数据来回调，来不及处理的中间数据会被直接丢弃，不会排队
+ *
+ * @author wuyr
+ * @github https://github.com/wuyr/RandomDragLayout
+ * @since 2026-10-19
+ */
+class ConflatedDispatcher implements RandomDragLayout.OnDragListener, Runnable {
+
+    private final Executor mExecutor;
+    private final AtomicBoolean isScheduled;//是否已经提交了任务还没开始执行
+    private final Object mConsumerLock;//保证回调按顺序执行 (仅Executor线程使用)
+    private volatile RandomDragLayout.OnDragListener mOnDragListener;
+    private volatile RandomDragLayout.OnStateChangeListener mOnStateChangeListener;
+
+    //以下字段只由主线程写入，mSequence为奇数时表示正在写入
+    private volatile int mSequence;
+    private volatile float mX, mY, mDegrees;
+    private volatile int mState;
+    private volatile int mDragVersion, mStateVersion;
+
+    //以下字段只在Executor中使用
+    private int mDeliveredDragVersion, mDeliveredStateVersion;
+
+    ConflatedDispatcher(Executor executor) {
+        mExecutor = executor;
+        isScheduled = new AtomicBoolean();
+        mConsumerLock = new Object();
+    }
+
+    void setOnDragListener(RandomDragLayout.OnDragListener listener) {
+        mOnDragListener = listener;
+    }
+
+    void setOnStateChangeListener(RandomDragLayout.OnStateChangeListener listener) {
+        mOnStateChangeListener = listener;
+    }
+
+    /**
+     * 发布最新的拖动数据 (主线程调用)
+     */
+    @Override
+    public void onUpdate(float x, float y, float degrees) {
+        if (mOnDragListener == null) {
+            return;
+        }
+        mSequence++;
+        mX = x;
+        mY = y;
+        mDegrees = degrees;
+        mDragVersion++;
+        mSequence++;
+        schedule();
+    }
+
+    /**
+     * 发布最新的状态 (主线程调用)
+     */
+    void onStateChanged(int newState) {
+        if (mOnStateChangeListener == null) {
+            return;
+        }
+        mSequence++;
+        mState = newState;
+        mStateVersion++;
+        mSequence++;
+        schedule();
+    }
+
+    private void schedule() {
+        if (isScheduled.compareAndSet(false, true)) {
+            try {
+                mExecutor.execute(this);
+            } catch (RejectedExecutionException e) {
+                //Executor已关闭或已满：丢弃这一次回调 (数据仍保留在槽位中)，下一次发布时会重新提交，
+                //不能让异常抛到主线程的绘制流程里
+                isScheduled.set(false);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        synchronized (mConsumerLock) {
+            //先清除标记，在这之后发布的数据会重新提交任务，所以不会丢失最新的数据
+            isScheduled.set(false);
+            float x, y, degrees;
+            int state, dragVersion, stateVersion, sequence;
+            do {
+                sequence = mSequence;
+                x = mX;
+                y = mY;
+                degrees = mDegrees;
+                state = mState;
+                dragVersion = mDragVersion;
+                stateVersion = mStateVersion;
+                //正在写入或读取期间被修改过，则重新读取
+            } while ((sequence & 1) != 0 || sequence != mSequence);
+
+            RandomDragLayout.OnDragListener onDragListener = mOnDragListener;
+            if (dragVersion != mDeliveredDragVersion) {
+                mDeliveredDragVersion = dragVersion;
+                if (onDragListener != null) {
+                    onDragListener.onUpdate(x, y, degrees);
+                }
+            }
+            RandomDragLayout.OnStateChangeListener onStateChangeListener = mOnStateChangeListener;
+            if (stateVersion != mDeliveredStateVersion) {
+                mDeliveredStateVersion = stateVersion;
+                if (onStateChangeListener != null) {
+                    onStateChangeListener.onStateChanged(state);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.wuyr.randomdraglayout;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 批量移除的调度器 (仅在主线程使用)
+ * 把每个RandomDragLayout的快照创建和动画启动分摊到多帧中：
+ * 每帧先启动上一帧已经准备好的动画，然后在帧预算内尽量多地创建快照 (每帧至少一个)
+ *
+ * @author wuyr
+ * @github https://github.com/wuyr/RandomDragLayout
+ * @since 2026-10-19
+ */
+class DismissScheduler {
+
+    private static DismissScheduler sInstance;
+
+    private final ArrayDeque<Task> mPendingTasks;//等待创建快照
+    private List<Task> mPreparedTasks;//快照已创建，等待下一帧启动动画
+    private List<Task> mStartingTasks;//正在启动动画 (和mPreparedTasks交替使用)
+    private long mFrameBudgetNanos;//每帧的预算
+    private final FrameTicker mFrameTicker;
+
+    private DismissScheduler() {
+        mPendingTasks = new ArrayDeque<>();
+        mPreparedTasks = new ArrayList<>();
+        mStartingTasks = new ArrayList<>();
+        mFrameBudgetNanos = 8_000_000L;
+        mFrameTicker = new FrameTicker(new FrameTicker.OnFrameListener() {
+            @Override
+            public void onFrame(long frameTimeNanos) {
+                DismissScheduler.this.onFrame();
+            }
+        });
+    }
+
+    static DismissScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new DismissScheduler();
+        }
+        return sInstance;
+    }
+
+    /**
+     * 设置每帧的预算
+     *
+     * @param millis 单位: 毫秒
+     */
+    void setFrameBudget(float millis) {
+        mFrameBudgetNanos = (long) (Math.max(0F, millis) * 1_000_000L);
+    }
+
+    /**
+     * 添加一批要移除的布局
+     *
+     * @param orientation 移除方向，为-1时使用速率
+     * @param xVelocity   X轴上的速率 (px/s)
+     * @param yVelocity   Y轴上的速率 (px/s)
+     * @param listener    整批结束时的回调
+     */
+    void enqueue(Collection<RandomDragLayout> layouts, int orientation, float xVelocity, float yVelocity,
+                 RandomDragLayout.OnDismissListener listener) {
+        Batch batch = new Batch(layouts.size(), listener);
+        if (batch.mPendingCount == 0) {
+            batch.notifyIfFinished();
+            return;
+        }
+        for (RandomDragLayout layout : layouts) {
+            mPendingTasks.add(new Task(layout, orientation, xVelocity, yVelocity, batch));
+        }
+        mFrameTicker.postFrame();
+    }
+
+    /**
+     * 取消某个布局还在排队的移除任务 (布局被回收时调用，避免复用后被误移除)
+     * 还没创建快照的任务直接算作跳过；已经创建了快照的任务，由布局自己通知所属的批次
+     */
+    void cancel(RandomDragLayout layout) {
+        List<Batch> skippedBatches = null;
+        for (Iterator<Task> iterator = mPendingTasks.iterator(); iterator.hasNext(); ) {
+            Task task = iterator.next();
+            if (task.mLayout == layout) {
+                iterator.remove();
+                if (skippedBatches == null) {
+                    skippedBatches = new ArrayList<>();
+                }
+                skippedBatches.add(task.mBatch);
+            }
+        }
+        //遍历完再通知，批次的回调里可能会添加新的任务
+        if (skippedBatches != null) {
+            for (Batch batch : skippedBatches) {
+                batch.onLayoutFinished(false);
+            }
+        }
+        for (int i = mPreparedTasks.size() - 1; i >= 0; i--) {
+            if (mPreparedTasks.get(i).mLayout == layout) {
+                mPreparedTasks.remove(i);
+            }
+        }
+    }
+
+    /**
+     * 新的一帧开始
+     */
+    private void onFrame() {
+        long startTime = System.nanoTime();
+        //启动动画很轻量，全部在帧开始时处理
+        //先换出列表再遍历：启动时会回调监听器，监听器中recycle其他布局会修改mPreparedTasks
+        List<Task> startingTasks = mPreparedTasks;
+        mPreparedTasks = mStartingTasks;
+        mStartingTasks = startingTasks;
+        for (int i = 0; i < startingTasks.size(); i++) {
+            Task task = startingTasks.get(i);
+            task.mLayout.startDismiss(task.mOrientation, task.mXVelocity, task.mYVelocity);
+        }
+        startingTasks.clear();
+        //创建快照比较耗时，超过预算就留到下一帧
+        while (!mPendingTasks.isEmpty()) {
+            Task task = mPendingTasks.poll();
+            if (task.mLayout.prepareDismiss(task.mBatch)) {
+                mPreparedTasks.add(task);
+            } else {
+                task.mBatch.onLayoutFinished(false);
+            }
+            if (System.nanoTime() - startTime >= mFrameBudgetNanos) {
+                break;
+            }
+        }
+        if (!mPendingTasks.isEmpty() || !mPreparedTasks.isEmpty()) {
+            mFrameTicker.postFrame();
+        }
+    }
+
+    /**
+     * 一批要移除的布局，全部结束后回调一次
+     */
+    static class Batch {
+
+        private int mPendingCount;//还没结束的个数
+        private int mDismissedCount;//真正被移除的个数
+        private RandomDragLayout.OnDismissListener mOnDismissListener;
+
+        private Batch(int count, RandomDragLayout.OnDismissListener listener) {
+            mPendingCount = count;
+            mOnDismissListener = listener;
+        }
+
+        /**
+         * 某一个布局结束了 (被移除或被跳过)
+         *
+         * @param dismissed 是否真正被移除
+         */
+        void onLayoutFinished(boolean dismissed) {
+            if (mPendingCount <= 0) {
+                return;
+            }
+            mPendingCount--;
+            if (dismissed) {
+                mDismissedCount++;
+            }
+            notifyIfFinished();
+        }
+
+        private void notifyIfFinished() {
+            if (mPendingCount == 0 && mOnDismissListener != null) {
+                RandomDragLayout.OnDismissListener listener = mOnDismissListener;
+                mOnDismissListener = null;
+                listener.onDismissed(mDismissedCount);
+            }
+        }
+    }
+
+    private static class Task {
+
+        private final RandomDragLayout mLayout;
+        private final int mOrientation;
+        private final float mXVelocity, mYVelocity;
+        private final Batch mBatch;
+
+        private Task(RandomDragLayout layout, int orientation, float xVelocity, float yVelocity, Batch batch) {
+            mLayout = layout;
+            mOrientation = orientation;
+            mXVelocity = xVelocity;
+            mYVelocity = yVelocity;
+            mBatch = batch;
+        }
+    }
+}
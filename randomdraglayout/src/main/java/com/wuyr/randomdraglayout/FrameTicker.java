@@ -0,0 +1,96 @@
+package com.wuyr.randomdraglayout;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+/**
+ * 在下一帧回调一次 (仅在主线程使用)
+ * API 16+ 使用Choreographer，以下的版本用Handler按16ms的间隔模拟
+ *
+ * @author wuyr
+ * @github https://github.com/wuyr/RandomDragLayout
+ * @since 2026-10-19
+ */
+class FrameTicker {
+
+    private static final long FALLBACK_FRAME_DELAY = 16L;
+
+    private final OnFrameListener mOnFrameListener;
+    private Choreographer.FrameCallback mFrameCallback;//只在API 16+ 创建
+    private Runnable mFallbackFrameTask;
+    private Handler mHandler;
+    private boolean isPosted;
+
+    FrameTicker(OnFrameListener listener) {
+        mOnFrameListener = listener;
+    }
+
+    /**
+     * 请求下一帧的回调 (已经请求过的话不会重复回调)
+     */
+    void postFrame() {
+        if (isPosted) {
+            return;
+        }
+        isPosted = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postFrameCallback();
+        } else {
+            if (mFallbackFrameTask == null) {
+                mHandler = new Handler(Looper.getMainLooper());
+                mFallbackFrameTask = new Runnable() {
+                    @Override
+                    public void run() {
+                        dispatchFrame(System.nanoTime());
+                    }
+                };
+            }
+            mHandler.postDelayed(mFallbackFrameTask, FALLBACK_FRAME_DELAY);
+        }
+    }
+
+    /**
+     * 取消已经请求的回调
+     */
+    void cancel() {
+        if (!isPosted) {
+            return;
+        }
+        isPosted = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        } else {
+            mHandler.removeCallbacks(mFallbackFrameTask);
+        }
+    }
+
+    private void dispatchFrame(long frameTimeNanos) {
+        isPosted = false;
+        mOnFrameListener.onFrame(frameTimeNanos);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        if (mFrameCallback == null) {
+            mFrameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    dispatchFrame(frameTimeNanos);
+                }
+            };
+        }
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    interface OnFrameListener {
+        /**
+         * 新的一帧开始
+         *
+         * @param frameTimeNanos 该帧开始渲染的时间
+         */
+        void onFrame(long frameTimeNanos);
+    }
+}
@@ -5,6 +5,7 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.Paint;
 import android.graphics.PointF;
 import android.graphics.RectF;
 import android.view.MotionEvent;
@@ -27,6 +28,11 @@ class GhostView extends View {
 
     private int mTargetOrientation = -1;
     private Bitmap mBitmap;
+    private int mBitmapWidth, mBitmapHeight;//Bitmap原始宽高 (降级时会使用缩小后的Bitmap，但绘制尺寸不变)
+    private float mBitmapScaleX = 1F, mBitmapScaleY = 1F;//Bitmap绘制时的放大倍数
+    private Paint mScaledBitmapPaint;
+    private TiledSnapshot mTiledSnapshot;//分块模式下代替mBitmap
+    private RectF mTileRect;
     private float mDownX, mDownY, mDownRawX;
     private float mBitmapCenterX, mBitmapCenterY;
     private float mCurrentRawX, mCurrentRawY;
@@ -49,11 +55,11 @@ class GhostView extends View {
 
     @Override
     protected void onDraw(Canvas canvas) {
-        if (mBitmap != null) {
+        if (mBitmap != null || mTiledSnapshot != null) {
 
             float l = mCurrentRawX - mDownX, t = mCurrentRawY - mDownY;
-            float r = l + mBitmap.getWidth();
-            float b = t + mBitmap.getHeight();
+            float r = l + mBitmapWidth;
+            float b = t + mBitmapHeight;
 
             mBitmapRect.set(l, t, r, b);
 
@@ -61,7 +67,15 @@ class GhostView extends View {
             mMatrix.mapRect(mBitmapRect);
 
             canvas.setMatrix(mMatrix);
-            canvas.drawBitmap(mBitmap, l, t, null);
+            if (mTiledSnapshot != null) {
+                drawTiles(canvas, l, t);
+            } else if (mBitmapScaleX == 1F && mBitmapScaleY == 1F) {
+                canvas.drawBitmap(mBitmap, l, t, null);
+            } else {
+                canvas.translate(l, t);
+                canvas.scale(mBitmapScaleX, mBitmapScaleY);
+                canvas.drawBitmap(mBitmap, 0, 0, mScaledBitmapPaint);
+            }
 
             if (checkIsContentOutOfScreen()) {
                 if (mOnOutOfScreenListener != null) {
@@ -74,26 +88,101 @@ class GhostView extends View {
     /**
      * 当此方法被调用时，表示已经开始了拖动
      *
-     * @param event  触摸事件
-     * @param bitmap View所对应的Bitmap
+     * @param event        触摸事件
+     * @param pointerIndex 控制拖动的手指在事件中的下标
+     * @param bitmap       View所对应的Bitmap
+     * @param bitmapLeft   Bitmap左边在事件坐标系中的位置
+     * @param bitmapTop    Bitmap顶部在事件坐标系中的位置
+     */
+    void onDown(MotionEvent event, int pointerIndex, Bitmap bitmap, float bitmapLeft, float bitmapTop) {
+        mBitmapWidth = bitmap.getWidth();
+        mBitmapHeight = bitmap.getHeight();
+        setBitmap(bitmap);
+        onDown(event, pointerIndex, bitmapLeft, bitmapTop);
+    }
+
+    /**
+     * 当此方法被调用时，表示已经开始了拖动 (分块模式)
+     *
+     * @param event        触摸事件
+     * @param pointerIndex 控制拖动的手指在事件中的下标
+     * @param snapshot     View所对应的分块快照
+     * @param bitmapLeft   快照左边在事件坐标系中的位置
+     * @param bitmapTop    快照顶部在事件坐标系中的位置
+     */
+    void onDown(MotionEvent event, int pointerIndex, TiledSnapshot snapshot, float bitmapLeft, float bitmapTop) {
+        mBitmapWidth = snapshot.getWidth();
+        mBitmapHeight = snapshot.getHeight();
+        mTiledSnapshot = snapshot;
+        mTileRect = new RectF();
+        onDown(event, pointerIndex, bitmapLeft, bitmapTop);
+    }
+
+    /**
+     * 当此方法被调用时，表示开始了代码触发的移除 (没有手指，以Bitmap中上方的点作为虚拟的触摸点)
+     *
+     * @param bitmap        View所对应的Bitmap
+     * @param bitmapRawLeft Bitmap左边在屏幕中的位置
+     * @param bitmapRawTop  Bitmap顶部在屏幕中的位置
+     */
+    void onDismiss(Bitmap bitmap, float bitmapRawLeft, float bitmapRawTop) {
+        mBitmapWidth = bitmap.getWidth();
+        mBitmapHeight = bitmap.getHeight();
+        setBitmap(bitmap);
+        onDismiss(bitmapRawLeft, bitmapRawTop);
+    }
+
+    /**
+     * 当此方法被调用时，表示开始了代码触发的移除 (分块模式)
+     *
+     * @param snapshot      View所对应的分块快照
+     * @param bitmapRawLeft 快照左边在屏幕中的位置
+     * @param bitmapRawTop  快照顶部在屏幕中的位置
      */
-    void onDown(MotionEvent event, Bitmap bitmap) {
+    void onDismiss(TiledSnapshot snapshot, float bitmapRawLeft, float bitmapRawTop) {
+        mBitmapWidth = snapshot.getWidth();
+        mBitmapHeight = snapshot.getHeight();
+        mTiledSnapshot = snapshot;
+        mTileRect = new RectF();
+        onDismiss(bitmapRawLeft, bitmapRawTop);
+    }
+
+    private void onDismiss(float bitmapRawLeft, float bitmapRawTop) {
+        //虚拟触摸点不能和Bitmap中心重合，否则无法计算角度
+        float downX = mBitmapWidth / 2F, downY = mBitmapHeight / 4F;
+        onDown(bitmapRawLeft + downX, bitmapRawTop + downY, downX, downY);
+    }
 
-        mCurrentRawX = mDownRawX = event.getRawX();
-        mCurrentRawY = event.getRawY();
-        mDownX = event.getX();
-        mDownY = event.getY();
+    private void onDown(MotionEvent event, int pointerIndex, float bitmapLeft, float bitmapTop) {
+        float x = event.getX(pointerIndex), y = event.getY(pointerIndex);
+        //getRawX只能获取第一个手指的，所以用本地坐标和绝对坐标的差值来换算 (每个手指的差值都一样)
+        //触摸点相对于Bitmap左上角的位置
+        onDown(x + event.getRawX() - event.getX(), y + event.getRawY() - event.getY(), x - bitmapLeft, y - bitmapTop);
+    }
+
+    /**
+     * @param rawX  触摸点在屏幕中的位置
+     * @param rawY  触摸点在屏幕中的位置
+     * @param downX 触摸点相对于Bitmap左上角的位置
+     * @param downY 触摸点相对于Bitmap左上角的位置
+     */
+    private void onDown(float rawX, float rawY, float downX, float downY) {
+        mCurrentRawX = mDownRawX = rawX;
+        mCurrentRawY = rawY;
+        mDownX = downX;
+        mDownY = downY;
 
         float l = mCurrentRawX - mDownX, t = mCurrentRawY - mDownY;
-        mBitmapCenterX = l + bitmap.getWidth() / 2F;
-        mBitmapCenterY = t + bitmap.getHeight() / 2F;
+        //还没绘制过也能拿到边界 (代码触发移除时，可能在第一次绘制前就要计算动画终点)
+        mBitmapRect.set(l, t, l + mBitmapWidth, t + mBitmapHeight);
+        mBitmapCenterX = l + mBitmapWidth / 2F;
+        mBitmapCenterY = t + mBitmapHeight / 2F;
 
         mStartAngle = computeClockwiseAngle(mBitmapCenterX, mBitmapCenterY, mCurrentRawX, mCurrentRawY);
 
-        float halfWidth = bitmap.getWidth() / 2F;
+        float halfWidth = mBitmapWidth / 2F;
         isLeanLeft = mDownX < halfWidth;
 
-        mBitmap = bitmap;
         invalidate();
         notifyDragListener();
     }
@@ -123,10 +212,10 @@ class GhostView extends View {
      * @param location 新的位置（绝对）
      */
     void onAnimationUpdate(PointF location) {
-        if (mBitmap != null) {
+        if (mBitmap != null || mTiledSnapshot != null) {
             float moveOffset = getMoveOffset(location);
             //90代表滑动距离=(View宽或View高)时的旋转角度
-            float angleOffset = Math.abs(moveOffset / Math.max(mBitmap.getWidth(), mBitmap.getHeight()) * 90F);
+            float angleOffset = Math.abs(moveOffset / Math.max(mBitmapWidth, mBitmapHeight) * 90F);
             //延续之前的旋转方向：如果之前是顺时针转，那就继续顺时针转，反之
             mCurrentAngle += isClockwise ? angleOffset : -angleOffset;
             mCurrentRawX = location.x;
@@ -137,6 +226,21 @@ class GhostView extends View {
         }
     }
 
+    /**
+     * 更换要绘制的Bitmap (位置和绘制尺寸不变，尺寸不一致时会拉伸到原始宽高)
+     *
+     * @param bitmap 新的Bitmap
+     */
+    void setBitmap(Bitmap bitmap) {
+        mBitmap = bitmap;
+        mBitmapScaleX = (float) mBitmapWidth / bitmap.getWidth();
+        mBitmapScaleY = (float) mBitmapHeight / bitmap.getHeight();
+        if ((mBitmapScaleX != 1F || mBitmapScaleY != 1F) && mScaledBitmapPaint == null) {
+            mScaledBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        }
+        invalidate();
+    }
+
     /**
      * 标记已经开始惯性移动
      */
@@ -178,7 +282,7 @@ class GhostView extends View {
     }
 
     /**
-     * 获取位移动画的终点
+     * 获取位移动画的终点 (根据当前位置决定方向)
      *
      * @return 终点位置
      */
@@ -190,6 +294,26 @@ class GhostView extends View {
         float topPercent = 1F - mCurrentRawY / halfHeight;
         float bottomPercent = (mCurrentRawY - halfHeight) / halfHeight;
         float max = Math.max(Math.max(leftPercent, rightPercent), Math.max(topPercent, bottomPercent));
+        int orientation;
+        if (max == leftPercent) {
+            orientation = ORIENTATION_LEFT;
+        } else if (max == rightPercent) {
+            orientation = ORIENTATION_RIGHT;
+        } else if (max == topPercent) {
+            orientation = ORIENTATION_TOP;
+        } else {
+            orientation = ORIENTATION_BOTTOM;
+        }
+        return getAnimationEndPoint(orientation);
+    }
+
+    /**
+     * 获取指定方向的位移动画的终点
+     *
+     * @param orientation {@see RandomDragLayout.ORIENTATION}
+     * @return 终点位置
+     */
+    PointF getAnimationEndPoint(int orientation) {
         //反正一移动出屏幕就会移除View并中断动画，并且我们需要在任何地方的移动速度都不变，所以我们的距离可以指定为屏幕高度 + View高度
         int maxBitmapLength = (int) Math.max(mBitmapRect.width(), mBitmapRect.height());
         if (maxBitmapLength == 0) {
@@ -198,26 +322,78 @@ class GhostView extends View {
         float distance = Math.max(getWidth(), getHeight()) + maxBitmapLength;
         int offset = -maxBitmapLength + new Random().nextInt(maxBitmapLength * 2);
         float toX, toY;
-        if (max == leftPercent) {
+        if (orientation == ORIENTATION_LEFT) {
             toX = -distance;
             toY = offset;
-            mTargetOrientation = ORIENTATION_LEFT;
-        } else if (max == rightPercent) {
+        } else if (orientation == ORIENTATION_RIGHT) {
             toX = mCurrentRawX + distance;
             toY = offset;
-            mTargetOrientation = ORIENTATION_RIGHT;
-        } else if (max == topPercent) {
+        } else if (orientation == ORIENTATION_TOP) {
             toX = offset;
             toY = -distance;
-            mTargetOrientation = ORIENTATION_TOP;
         } else {
             toX = offset;
             toY = mCurrentRawY + distance;
-            mTargetOrientation = ORIENTATION_BOTTOM;
         }
+        mTargetOrientation = orientation;
         return new PointF(toX, toY);
     }
 
+    /**
+     * 只绘制在屏幕内可见的块，位移动画过程中顺便释放已经不可能再回到屏幕内的块
+     *
+     * @param l 快照左边的位置 (旋转前)
+     * @param t 快照顶部的位置 (旋转前)
+     */
+    private void drawTiles(Canvas canvas, float l, float t) {
+        int tileSize = mTiledSnapshot.getTileSize();
+        for (int row = 0; row < mTiledSnapshot.getRowCount(); row++) {
+            for (int column = 0; column < mTiledSnapshot.getColumnCount(); column++) {
+                if (mTiledSnapshot.isTileDiscarded(column, row)) {
+                    continue;
+                }
+                float tileLeft = l + column * tileSize, tileTop = t + row * tileSize;
+                mTileRect.set(tileLeft, tileTop, tileLeft + mTiledSnapshot.getTileWidth(column),
+                        tileTop + mTiledSnapshot.getTileHeight(row));
+                mMatrix.mapRect(mTileRect);
+                if (mTileRect.intersects(0, 0, getWidth(), getHeight())) {
+                    Bitmap tile = mTiledSnapshot.obtainTile(column, row);
+                    if (tile != null) {
+                        canvas.drawBitmap(tile, tileLeft, tileTop, null);
+                    }
+                } else if (mTargetOrientation != -1 && isTileGoneForever(column, row)) {
+                    mTiledSnapshot.discardTile(column, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * 判断某一块是否已经不可能再回到屏幕内：
+     * 旋转中心 (触摸点) 只会朝目标方向移动，块上的点到旋转中心的距离不变，
+     * 所以当旋转中心离屏幕边缘的距离超过块上离它最远的点的距离时，这一块无论怎么旋转都回不来了
+     */
+    private boolean isTileGoneForever(int column, int row) {
+        int tileSize = mTiledSnapshot.getTileSize();
+        //相对于旋转中心的坐标
+        float left = column * tileSize - mDownX, top = row * tileSize - mDownY;
+        float right = left + mTiledSnapshot.getTileWidth(column), bottom = top + mTiledSnapshot.getTileHeight(row);
+        float maxX = Math.max(Math.abs(left), Math.abs(right)), maxY = Math.max(Math.abs(top), Math.abs(bottom));
+        float radius = (float) Math.sqrt(maxX * maxX + maxY * maxY);
+        switch (mTargetOrientation) {
+            case ORIENTATION_LEFT:
+                return mCurrentRawX + radius < 0;
+            case ORIENTATION_RIGHT:
+                return mCurrentRawX - radius > getWidth();
+            case ORIENTATION_TOP:
+                return mCurrentRawY + radius < 0;
+            case ORIENTATION_BOTTOM:
+                return mCurrentRawY - radius > getHeight();
+            default:
+                return false;
+        }
+    }
+
     private void notifyDragListener() {
         if (mOnDragListener != null) {
             mOnDragListener.onUpdate(mCurrentRawX, mCurrentRawY, fixAngle(mCurrentAngle));
@@ -317,6 +493,7 @@ class GhostView extends View {
      */
     private void release() {
         mBitmap = null;
+        mTiledSnapshot = null;
         mMatrix = null;
         mBitmapRect = null;
         mOnOutOfScreenListener = null;
@@ -0,0 +1,165 @@
+package com.wuyr.randomdraglayout;
+
+import android.os.Build;
+
+import static com.wuyr.randomdraglayout.RandomDragLayout.QUALITY_FINISH_EARLY;
+import static com.wuyr.randomdraglayout.RandomDragLayout.QUALITY_FULL;
+
+/**
+ * 渲染质量调节器：在一次拖动过程中监测每帧耗时，
+ * 连续掉帧时逐级降低GhostView的渲染质量，帧率恢复后再逐级还原
+ *
+ * @author wuyr
+ * @github https://github.com/wuyr/RandomDragLayout
+ * @since 2026-10-19
+ */
+class QualityGovernor {
+
+    private static final int SLOW_FRAMES_TO_DEGRADE = 3;//连续多少个慢帧后降一级
+    private static final int FAST_FRAMES_TO_RESTORE = 30;//连续多少个正常帧后升一级
+    private static final float SLOW_FRAME_FACTOR = 1.5F;//超过帧预算的多少倍算慢帧 (即至少丢了一个vsync)
+
+    private int mLevel;//当前质量等级
+    private int mMaxLevel;//最多可以降到哪一级
+    private int mSkippedLevel = -1;//本次拖动中不可用的等级 (升降级时直接跳过)，-1表示没有
+    private long mFrameBudgetNanos;//每帧的预算
+    private long mLastFrameTimeNanos;
+    private int mSlowFrames, mFastFrames;
+    private boolean isRunning;
+    private final FrameTicker mFrameTicker;
+    private OnLevelChangeListener mOnLevelChangeListener;
+
+    QualityGovernor(OnLevelChangeListener listener) {
+        mOnLevelChangeListener = listener;
+        mFrameTicker = new FrameTicker(new FrameTicker.OnFrameListener() {
+            @Override
+            public void onFrame(long frameTimeNanos) {
+                QualityGovernor.this.onFrame(frameTimeNanos);
+                if (isRunning) {
+                    mFrameTicker.postFrame();
+                }
+            }
+        });
+        mMaxLevel = QUALITY_FINISH_EARLY;
+        mFrameBudgetNanos = 16_666_667L;
+    }
+
+    /**
+     * 设置每帧的预算
+     *
+     * @param millis 单位: 毫秒
+     */
+    void setFrameBudget(float millis) {
+        mFrameBudgetNanos = (long) (millis * 1_000_000L);
+    }
+
+    /**
+     * 设置最多可以降到哪一级
+     */
+    void setMaxLevel(int level) {
+        mMaxLevel = Math.max(QUALITY_FULL, Math.min(level, QUALITY_FINISH_EARLY));
+    }
+
+    /**
+     * 设置本次拖动中不可用的等级，升降级时会直接跳过它，不用再多等几个慢帧
+     *
+     * @param level 不可用的等级，-1表示全部可用
+     */
+    void setSkippedLevel(int level) {
+        mSkippedLevel = level;
+    }
+
+    int getLevel() {
+        return mLevel;
+    }
+
+    boolean isRunning() {
+        return isRunning;
+    }
+
+    /**
+     * 开始监测 (每次拖动开始时调用，等级会从{@link RandomDragLayout#QUALITY_FULL}开始)
+     */
+    void start() {
+        stop();
+        mLevel = QUALITY_FULL;
+        mLastFrameTimeNanos = 0;
+        mSlowFrames = 0;
+        mFastFrames = 0;
+        isRunning = true;
+        //用Handler模拟的帧间隔不能反映真实的掉帧情况，所以API 16以下不监测
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mFrameTicker.postFrame();
+        }
+    }
+
+    /**
+     * 停止监测，当前等级会保留，以便获取本次拖动结束时的等级
+     */
+    void stop() {
+        mFrameTicker.cancel();
+        isRunning = false;
+    }
+
+    /**
+     * 新的一帧开始
+     *
+     * @param frameTimeNanos 该帧开始渲染的时间
+     */
+    void onFrame(long frameTimeNanos) {
+        if (!isRunning) {
+            return;
+        }
+        if (mLastFrameTimeNanos > 0) {
+            long duration = frameTimeNanos - mLastFrameTimeNanos;
+            if (duration > mFrameBudgetNanos * SLOW_FRAME_FACTOR) {
+                mFastFrames = 0;
+                int nextLevel = nextLevel(1);
+                if (++mSlowFrames >= SLOW_FRAMES_TO_DEGRADE && nextLevel != mLevel) {
+                    updateLevel(nextLevel);
+                }
+            } else {
+                mSlowFrames = 0;
+                int nextLevel = nextLevel(-1);
+                if (++mFastFrames >= FAST_FRAMES_TO_RESTORE && nextLevel != mLevel) {
+                    updateLevel(nextLevel);
+                }
+            }
+        }
+        mLastFrameTimeNanos = frameTimeNanos;
+    }
+
+    /**
+     * 获取升级或降级后的等级 (跳过不可用的等级)
+     *
+     * @param step 1: 降级，-1: 升级
+     * @return 不能再升降时返回当前等级
+     */
+    private int nextLevel(int step) {
+        int level = mLevel + step;
+        if (level == mSkippedLevel) {
+            level += step;
+        }
+        return level < QUALITY_FULL || level > mMaxLevel ? mLevel : level;
+    }
+
+    private void updateLevel(int newLevel) {
+        int oldLevel = mLevel;
+        mLevel = newLevel;
+        mSlowFrames = 0;
+        mFastFrames = 0;
+        if (mOnLevelChangeListener != null) {
+            mOnLevelChangeListener.onLevelChanged(oldLevel, newLevel);
+        }
+    }
+
+    interface OnLevelChangeListener {
+        /**
+         * 质量等级变化时回调
+         *
+         * @param oldLevel 旧的等级
+         * @param newLevel 新的等级
+         */
+        void onLevelChanged(int oldLevel, int newLevel);
+    }
+}
@@ -5,6 +5,7 @@ import android.animation.AnimatorListenerAdapter;
 import android.animation.TypeEvaluator;
 import android.animation.ValueAnimator;
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.Context;
 import android.content.ContextWrapper;
@@ -13,16 +14,22 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.PointF;
 import android.graphics.PorterDuff;
+import android.graphics.Rect;
 import android.graphics.RectF;
+import android.os.Build;
 import android.os.Handler;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
-import android.view.VelocityTracker;
 import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
+import android.view.ViewParent;
 import android.widget.Scroller;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+
 /**
  * @author wuyr
  * @github https://github.com/wuyr/RandomDragLayout
@@ -71,6 +78,24 @@ public class RandomDragLayout extends ViewGroup {
      * 该View在屏幕内播放透明渐变动画完毕（消失掉）
      */
     public static final int STATE_GONE = 5;
+    /**
+     * 渲染质量：完整质量
+     */
+    public static final int QUALITY_FULL = 0;
+    /**
+     * 渲染质量：暂停子View的重绘
+     */
+    public static final int QUALITY_PAUSE_REFRESH = 1;
+    /**
+     * 渲染质量：在上一级的基础上，GhostView改用缩小后的Bitmap
+     */
+    public static final int QUALITY_DOWNSCALED = 2;
+    /**
+     * 渲染质量：在上一级的基础上，提前结束位移动画
+     */
+    public static final int QUALITY_FINISH_EARLY = 3;
+
+    private static final int MAX_POINTER_COUNT = 10;//最多同时跟踪的手指数
 
     private int mState;//当前状态
     private ViewGroup mRootView;//DecorView
@@ -79,23 +104,53 @@ public class RandomDragLayout extends ViewGroup {
     private boolean isBeingDragged;//是否已经开始了拖动
     private boolean isGhostViewShown;//GhostView是否已经添加
     private boolean isGhostViewLostControl;//GhostView是否脱离手指
+    private boolean isIgnoringGesture;//被强制回收时手指还没松开，忽略本次手势剩下的事件，直到下一次ACTION_DOWN
+    private boolean isDismissPending;//代码触发移除：GhostView已经显示，等待下一帧开始移动 (期间不响应手指)
     private boolean isAlphaAnimationRunning;//透明渐变动画是否正在播放
     private float mScrollAvailabilityRatio;
-    private float mLastX, mLastY;
+    private int mActivePointerId = MotionEvent.INVALID_POINTER_ID;//控制拖动的手指
+    private final int[] mPointerIds = new int[MAX_POINTER_COUNT];//按下的手指 (预先分配，添加手指时不分配内存)
+    private final float[] mPointerLastX = new float[MAX_POINTER_COUNT];//每个手指上一次的位置
+    private final float[] mPointerLastY = new float[MAX_POINTER_COUNT];
+    private int mPointerCount;
     private long mFlingDuration;
     private long mAlphaDuration;
     private Scroller mScroller;
-    private VelocityTracker mVelocityTracker;
+    private VelocityEstimator mVelocityEstimator;//只在拖动时采样
+    private float mFlingVelocityThreshold;//触发惯性移动的最小速率 (px/s)
+    private float mMaxFlingVelocity;//惯性移动的最大速率 (px/s)
     private GhostView mGhostView;
-    private Bitmap mBitmap;//子View的Bitmap（用来位移，旋转）
+    private Bitmap mBitmap;//子View的Bitmap（用来位移，旋转），尺寸和子View (或裁剪后的内容区域) 一致
     private Canvas mCanvas;
+    private boolean isTrimTransparentEdges;//是否裁剪掉子View四周完全透明的区域
+    private Rect mSnapshotBounds;//GhostView所用Bitmap在子View中的区域
+    private int[] mScanPixels;//扫描透明边缘时用的行/列像素缓存
+    private Rect mContentBounds;//缓存的非透明内容边界 (子View重绘或尺寸变化后失效)
+    private int mContentBoundsWidth, mContentBoundsHeight;//计算边界时子View的尺寸
+    private boolean isContentBoundsValid;
+    private Bitmap mSnapshot;//GhostView正在使用的原始Bitmap
+    private Bitmap mScaledSnapshot;//降级时使用的缩小版Bitmap
+    private Object mContentKey;//子View的内容标识，相同标识和尺寸的RandomDragLayout共用Bitmap
+    private SnapshotCache.Entry mSharedSnapshot;//正在使用的共享Bitmap
+    private boolean hasUsedSharedSnapshot;//是否使用过共享Bitmap
+    private boolean isChangingChildVisibility;//正在修改子View的可见性 (此时子View的重绘不算内容变化)
+    private boolean isHardwareSnapshotEnabled = true;//静态View是否使用HARDWARE类型的Bitmap
+    private boolean isTiledSnapshotEnabled;//是否使用分块快照
+    private int mSnapshotTileSize = 256;//分块快照每一块的边长
+    private TiledSnapshot mTiledSnapshot;//正在使用的分块快照
+    private QualityGovernor mQualityGovernor;//渲染质量调节器
+    private boolean isQualityGovernorEnabled;
+    private OnQualityReportListener mOnQualityReportListener;
     private ValueAnimator mAnimator;
     private TypeEvaluator<PointF> mEvaluator;
     private OnStateChangeListener mOnStateChangeListener;
     private OnDragListener mOnDragListener;
+    private ConflatedDispatcher mDispatcher;//在其他线程回调监听器 (未设置Executor时为null)
     private Handler mHandler;
     private Runnable mChildRefreshTask;//子View重绘任务
     private long mChildRefreshPeriod;//间隔时长
+    private Runnable mGhostViewReleaseTask;//GhostView脱离手指并且惯性移动完毕后，移除或播放渐变动画
+    private DismissScheduler.Batch mDismissBatch;//代码触发移除时所属的批次 (GhostView移除时通知)
 
     public RandomDragLayout(Context context) {
         this(context, null);
@@ -119,10 +174,16 @@ public class RandomDragLayout extends ViewGroup {
         }
         mTouchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
         mScroller = new Scroller(context);
-        mVelocityTracker = VelocityTracker.obtain();
+        mVelocityEstimator = new VelocityEstimator();
+        mFlingVelocityThreshold = 2000F;
+        mMaxFlingVelocity = Float.MAX_VALUE;
         mScrollAvailabilityRatio = .8F;
         mFlingDuration = 800L;
         mAlphaDuration = 200L;
+        mSnapshotBounds = new Rect();
+        mContentBounds = new Rect();
+        initGhostViewReleaseTask();
+        initQualityGovernor();
         initEvaluator();
     }
 
@@ -136,11 +197,11 @@ public class RandomDragLayout extends ViewGroup {
                 || isAlphaAnimationRunning || !mScroller.isFinished()) {
             return false;
         }
-        if (mGhostView != null) {
-            mRootView.removeView(mGhostView);
-            mGhostView = null;
-        }
-        mChild.setVisibility(VISIBLE);
+        cancelDismiss();
+        removeGhostView();
+        //重置后子View的内容可能已经变了
+        isContentBoundsValid = false;
+        setChildVisibility(VISIBLE);
         isGhostViewShown = false;
         isGhostViewLostControl = false;
         mAnimator = null;
@@ -149,6 +210,100 @@ public class RandomDragLayout extends ViewGroup {
         return true;
     }
 
+    /**
+     * 强制回收：立即中断拖动和所有动画，移除GhostView，释放Bitmap并恢复到{@link #STATE_NORMAL}
+     * 与{@link #reset()}不同的是，任何状态下都会成功，
+     * 可以在RecyclerView.Adapter的onViewRecycled中调用，避免快速滑动时残留GhostView
+     * 调用时如果手指还没松开，本次手势剩下的事件都会被忽略
+     */
+    public void recycle() {
+        cancelDismiss();
+        isBeingDragged = false;
+        resetPointers(MotionEvent.INVALID_POINTER_ID);
+        isIgnoringGesture = true;
+        mVelocityEstimator.clear();
+        abortAnimation();
+        mAnimator = null;
+        removeCallbacks(mGhostViewReleaseTask);
+        if (mGhostView != null) {
+            //先去掉监听再取消，避免回调onAnimationEnd
+            mGhostView.animate().setListener(null).cancel();
+        }
+        isAlphaAnimationRunning = false;
+        mLastScrollOffsetX = 0;
+        mLastScrollOffsetY = 0;
+        removeGhostView();
+        removeRefreshTask();
+        //回收后子View会被重新绑定
+        isContentBoundsValid = false;
+        if (mChild != null) {
+            setChildVisibility(VISIBLE);
+        }
+        isGhostViewShown = false;
+        isGhostViewLostControl = false;
+        updateState(STATE_NORMAL);
+    }
+
+    /**
+     * 代码触发移除：向指定方向飞出屏幕 (与手指拖动后松手的效果一致)
+     * 快照创建和动画启动会分摊到不同的帧中，参考{@link #dismissAll(Collection, int, OnDismissListener)}
+     *
+     * @param orientation 移除方向 {@link #ORIENTATION_LEFT} {@link #ORIENTATION_RIGHT}
+     *                    {@link #ORIENTATION_TOP} {@link #ORIENTATION_BOTTOM}
+     */
+    public void dismiss(int orientation) {
+        dismissAll(Collections.singletonList(this), orientation, null);
+    }
+
+    /**
+     * 代码触发移除：以指定的速率惯性移动
+     *
+     * @param xVelocity X轴上的速率 (px/s)
+     * @param yVelocity Y轴上的速率 (px/s)
+     */
+    public void dismiss(float xVelocity, float yVelocity) {
+        dismissAll(Collections.singletonList(this), xVelocity, yVelocity, null);
+    }
+
+    /**
+     * 批量移除 (需要在主线程调用)：每帧在预算内创建尽量多的快照，在下一帧启动它们的位移动画，
+     * 避免同一帧内创建大量Bitmap和GhostView造成卡顿
+     * 正在拖动、还没显示出来或者已经移除过但没有{@link #reset()}的布局会被跳过，
+     * 移除过程中被{@link #recycle()}或{@link #reset()}的布局也算作跳过 (不会在复用后被误移除)
+     *
+     * @param layouts     要移除的布局
+     * @param orientation 移除方向
+     * @param listener    整批都结束 (GhostView都已经移除) 时回调，可以为null
+     */
+    public static void dismissAll(Collection<RandomDragLayout> layouts, int orientation, OnDismissListener listener) {
+        if (orientation < ORIENTATION_LEFT || orientation > ORIENTATION_BOTTOM) {
+            throw new IllegalArgumentException("Unknown orientation: " + orientation);
+        }
+        DismissScheduler.getInstance().enqueue(layouts, orientation, 0, 0, listener);
+    }
+
+    /**
+     * 批量移除 (需要在主线程调用)：以指定的速率惯性移动，其他同{@link #dismissAll(Collection, int, OnDismissListener)}
+     *
+     * @param layouts   要移除的布局
+     * @param xVelocity X轴上的速率 (px/s)
+     * @param yVelocity Y轴上的速率 (px/s)
+     * @param listener  整批都结束 (GhostView都已经移除) 时回调，可以为null
+     */
+    public static void dismissAll(Collection<RandomDragLayout> layouts, float xVelocity, float yVelocity,
+                                  OnDismissListener listener) {
+        DismissScheduler.getInstance().enqueue(layouts, -1, xVelocity, yVelocity, listener);
+    }
+
+    /**
+     * 设置批量移除时每帧用来创建快照的时间预算 (每帧至少会创建一个)
+     *
+     * @param millis 单位: 毫秒
+     */
+    public static void setDismissFrameBudget(float millis) {
+        DismissScheduler.getInstance().setFrameBudget(millis);
+    }
+
     /**
      * 设置惯性移动的利用率
      *
@@ -172,11 +327,52 @@ public class RandomDragLayout extends ViewGroup {
         mAlphaDuration = duration;
     }
 
+    /**
+     * 设置计算松手速率时使用的时间窗口 默认：100
+     * 只有松手前这段时间内的触摸事件会参与计算
+     *
+     * @param window 单位: 毫秒
+     */
+    public void setVelocityWindow(long window) {
+        mVelocityEstimator.setWindow(window);
+    }
+
+    /**
+     * 设置计算松手速率时的拟合阶数 默认：2
+     *
+     * @param order 1: 线性拟合，2: 二次拟合
+     */
+    public void setVelocityFitOrder(int order) {
+        mVelocityEstimator.setFitOrder(order);
+    }
+
+    /**
+     * 设置触发惯性移动的最小速率 默认：2000
+     * 松手时X轴或Y轴上的速率超过此值则惯性移动，否则向屏幕边缘移动
+     *
+     * @param velocity 单位: px/s
+     */
+    public void setFlingVelocityThreshold(float velocity) {
+        mFlingVelocityThreshold = velocity;
+    }
+
+    /**
+     * 设置惯性移动的最大速率 默认：不限制
+     *
+     * @param velocity 单位: px/s
+     */
+    public void setMaxFlingVelocity(float velocity) {
+        mMaxFlingVelocity = velocity > 0 ? velocity : Float.MAX_VALUE;
+    }
+
     /**
      * 监听状态变化
      */
     public void setOnStateChangeListener(OnStateChangeListener listener) {
         mOnStateChangeListener = listener;
+        if (mDispatcher != null) {
+            mDispatcher.setOnStateChangeListener(listener);
+        }
     }
 
     /**
@@ -184,11 +380,35 @@ public class RandomDragLayout extends ViewGroup {
      */
     public void setOnDragListener(OnDragListener onDragListener) {
         mOnDragListener = onDragListener;
-        if (mGhostView != null) {
+        if (mDispatcher != null) {
+            mDispatcher.setOnDragListener(onDragListener);
+        } else if (mGhostView != null) {
             mGhostView.setOnDragListener(onDragListener);
         }
     }
 
+    /**
+     * 设置监听器的回调线程 默认：null (在主线程同步回调)
+     * 设置后，{@link OnDragListener}和{@link OnStateChangeListener}会在executor中回调，
+     * 并且每次只回调最新的数据，来不及处理的中间数据 (包括中间状态) 会被丢弃，
+     * 适用于监听器中有耗时操作的场景，建议使用单线程的Executor
+     * executor拒绝任务 (已关闭或已满) 时，这一次回调会被丢弃，下一次有新数据时再重新提交
+     *
+     * @param executor 为null时恢复在主线程同步回调
+     */
+    public void setListenerExecutor(Executor executor) {
+        if (executor == null) {
+            mDispatcher = null;
+        } else {
+            mDispatcher = new ConflatedDispatcher(executor);
+            mDispatcher.setOnDragListener(mOnDragListener);
+            mDispatcher.setOnStateChangeListener(mOnStateChangeListener);
+        }
+        if (mGhostView != null) {
+            mGhostView.setOnDragListener(mDispatcher != null ? mDispatcher : mOnDragListener);
+        }
+    }
+
     /**
      * 设置子View的重绘周期 默认：0 (不重绘)
      * 一般是内容会不断更新的View才需要设置此参数，静态的View无需设置
@@ -202,7 +422,12 @@ public class RandomDragLayout extends ViewGroup {
             mChildRefreshTask = new Runnable() {
                 @Override
                 public void run() {
-                    if (mGhostView != null) {
+                    //GhostView用的不是画布上的Bitmap (裁剪、共享或HARDWARE) 时，重绘也没有意义
+                    if (mGhostView != null && mTiledSnapshot != null) {
+                        mTiledSnapshot.refresh();
+                        mGhostView.invalidate();
+                        postRefreshTask();
+                    } else if (mGhostView != null && mSnapshot == mBitmap) {
                         mCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
                         mChild.draw(mCanvas);
                         mGhostView.invalidate();
@@ -210,9 +435,144 @@ public class RandomDragLayout extends ViewGroup {
                     }
                 }
             };
+        } else {
+            //恢复成静态的View，HARDWARE类型的Bitmap、裁剪和共享都重新可用
+            mChildRefreshPeriod = 0;
+            mChildRefreshTask = null;
+        }
+    }
+
+    /**
+     * 设置是否裁剪掉子View四周完全透明的区域 默认：false
+     * 适用于带透明阴影等内容的View，裁剪后GhostView只绘制有内容的部分
+     * 注意：仅对静态的View有效，设置了{@link #setChildRefreshPeriod(long)}时不会裁剪
+     */
+    public void setTrimTransparentEdges(boolean trim) {
+        isTrimTransparentEdges = trim;
+        isContentBoundsValid = false;
+    }
+
+    /**
+     * 设置静态的View是否使用HARDWARE类型的Bitmap 默认：true (需要API 26+)
+     * 开启后，绘制完成的Bitmap会转换成只存在于显存中的不可变Bitmap，用来绘制的Bitmap随即释放，
+     * 以下情况会自动改回普通的Bitmap：API 26以下，软件绘制的窗口，设置了{@link #setChildRefreshPeriod(long)}
+     */
+    public void setHardwareSnapshotEnabled(boolean enabled) {
+        isHardwareSnapshotEnabled = enabled;
+    }
+
+    /**
+     * 设置是否使用分块快照 默认：false
+     * 适用于接近全屏的大尺寸子View：子View会被切分成小块，每一块在需要绘制时才创建，
+     * GhostView只绘制在屏幕内可见的块，移出屏幕的过程中，不可能再回来的块会被提前释放
+     * 开启后，裁剪透明边缘、共享Bitmap、HARDWARE类型的Bitmap和降级时的缩小Bitmap都不会生效
+     */
+    public void setTiledSnapshotEnabled(boolean enabled) {
+        isTiledSnapshotEnabled = enabled;
+    }
+
+    /**
+     * 设置分块快照每一块的边长 默认：256
+     */
+    public void setSnapshotTileSize(int size) {
+        if (size > 0) {
+            mSnapshotTileSize = size;
+        }
+    }
+
+    /**
+     * 设置子View的内容标识 默认：null (不共享)
+     * 内容标识相同 (equals) 并且子View尺寸相同的RandomDragLayout会共用同一个Bitmap，
+     * 适用于列表中有很多外观完全一样的子View的场景
+     * 注意：仅对静态的View有效，设置了{@link #setChildRefreshPeriod(long)}时不会共享
+     *
+     * @param key 内容标识，需要正确实现equals和hashCode
+     */
+    public void setContentKey(Object key) {
+        mContentKey = key;
+        hasUsedSharedSnapshot = false;
+    }
+
+    /**
+     * 使当前内容标识对应的共享Bitmap失效，下次拖动时会重新绘制
+     * 子View在拖动之外重绘时也会自动失效
+     */
+    public void invalidateContentSnapshot() {
+        if (mContentKey != null) {
+            SnapshotCache.getInstance().invalidate(mContentKey);
         }
     }
 
+    /**
+     * 使指定内容标识对应的共享Bitmap失效
+     */
+    public static void invalidateSharedSnapshot(Object key) {
+        SnapshotCache.getInstance().invalidate(key);
+    }
+
+    /**
+     * 设置共享Bitmap的缓存大小上限 默认：8MB
+     * 正在使用的Bitmap不会被移除，其余的按最近最少使用的顺序移除
+     *
+     * @param maxBytes 单位: bytes
+     */
+    public static void setSharedSnapshotCacheSize(int maxBytes) {
+        SnapshotCache.getInstance().setMaxSize(maxBytes);
+    }
+
+    /**
+     * 清空共享Bitmap的缓存
+     */
+    public static void clearSharedSnapshotCache() {
+        SnapshotCache.getInstance().clear();
+    }
+
+    /**
+     * 设置是否开启渲染质量自动调节 默认：false (需要API 16+)
+     * 开启后，拖动过程中如果连续掉帧，会按以下顺序逐级降低渲染质量，帧率恢复后再逐级还原：
+     * {@link #QUALITY_PAUSE_REFRESH} -> {@link #QUALITY_DOWNSCALED} -> {@link #QUALITY_FINISH_EARLY}
+     */
+    public void setQualityGovernorEnabled(boolean enabled) {
+        isQualityGovernorEnabled = enabled;
+        if (!enabled) {
+            mQualityGovernor.stop();
+        }
+    }
+
+    /**
+     * 设置渲染质量调节的帧预算 默认：16.67
+     *
+     * @param millis 每帧的预算 (毫秒)
+     */
+    public void setQualityFrameBudget(float millis) {
+        mQualityGovernor.setFrameBudget(millis);
+    }
+
+    /**
+     * 设置渲染质量最多可以降到哪一级 默认：{@link #QUALITY_FINISH_EARLY}
+     *
+     * @param level {@link #QUALITY_FULL} ~ {@link #QUALITY_FINISH_EARLY}
+     */
+    public void setMaxQualityDegradeLevel(int level) {
+        mQualityGovernor.setMaxLevel(level);
+    }
+
+    /**
+     * 监听每次拖动结束时的渲染质量等级
+     */
+    public void setOnQualityReportListener(OnQualityReportListener listener) {
+        mOnQualityReportListener = listener;
+    }
+
+    /**
+     * 获取当前 (或最近一次拖动结束时) 的渲染质量等级
+     *
+     * @return {@link #QUALITY_FULL} ~ {@link #QUALITY_FINISH_EARLY}
+     */
+    public int getQualityLevel() {
+        return mQualityGovernor.getLevel();
+    }
+
     /**
      * 获取当前位移动画前进的方向，包括：上，下，左，右
      *
@@ -222,6 +582,15 @@ public class RandomDragLayout extends ViewGroup {
         return mGhostView == null ? -1 : mGhostView.getTargetOrientation();
     }
 
+    /**
+     * 获取当前的GhostView (测试中用来模拟框架的绘制流程)
+     *
+     * @return 没有拖动或动画时为null
+     */
+    GhostView getGhostView() {
+        return mGhostView;
+    }
+
     /**
      * 获取当前状态，包框：普通，拖拽中，惯性移动中，非惯性移动中，超出屏幕，消失
      *
@@ -238,76 +607,483 @@ public class RandomDragLayout extends ViewGroup {
         return mGhostView.getBounds();
     }
 
-    @Override
-    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-        super.onSizeChanged(w, h, oldw, oldh);
-        if (w > 0 && h > 0) {
-            //更新画布尺寸
-            mCanvas = new Canvas(mBitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888));
-        }
-    }
-
     @SuppressLint("ClickableViewAccessibility")
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        float x = event.getX(), y = event.getY();
-        mVelocityTracker.addMovement(event);
-        switch (event.getAction()) {
+        if (shouldIgnoreEvent(event)) {
+            return true;
+        }
+        switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
+                resetPointers(event.getPointerId(0));
+                handleActionMove(event, 0);
+                break;
+            case MotionEvent.ACTION_POINTER_DOWN:
+                //新按下的手指只记录位置，拖动仍然由原来的手指控制
+                if (mActivePointerId == MotionEvent.INVALID_POINTER_ID) {
+                    mActivePointerId = event.getPointerId(event.getActionIndex());
+                }
+                break;
             case MotionEvent.ACTION_MOVE:
-                handleActionMove(event, x, y);
+                int pointerIndex = event.findPointerIndex(mActivePointerId);
+                if (pointerIndex >= 0) {
+                    handleActionMove(event, pointerIndex);
+                }
                 break;
+            case MotionEvent.ACTION_POINTER_UP:
+                handleActionPointerUp(event);
+                return true;
             case MotionEvent.ACTION_UP:
             case MotionEvent.ACTION_CANCEL:
             case MotionEvent.ACTION_OUTSIDE:
-                handleActionUp();
-                break;
+                handleActionUp(event, event.findPointerIndex(mActivePointerId));
+                resetPointers(MotionEvent.INVALID_POINTER_ID);
+                return true;
             default:
                 break;
         }
-        mLastX = x;
-        mLastY = y;
+        updatePointerPositions(event, -1);
         return true;
     }
 
+    /**
+     * 是否忽略此事件：强制回收后，本次手势剩下的事件都不处理，否则下一个ACTION_MOVE会在手势中途重新创建GhostView
+     */
+    private boolean shouldIgnoreEvent(MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            isIgnoringGesture = false;
+        }
+        return isIgnoringGesture;
+    }
+
+    /**
+     * 处理 ACTION_POINTER_UP 事件：控制拖动的手指抬起时，交给其他还按着的手指继续控制
+     */
+    private void handleActionPointerUp(MotionEvent event) {
+        int actionIndex = event.getActionIndex();
+        int pointerId = event.getPointerId(actionIndex);
+        removePointer(pointerId);
+        updatePointerPositions(event, actionIndex);
+        if (pointerId == mActivePointerId) {
+            mActivePointerId = mPointerCount > 0 ? mPointerIds[0] : MotionEvent.INVALID_POINTER_ID;
+            //换了手指，之前的采样点已经没有参考价值
+            mVelocityEstimator.clear();
+        }
+    }
+
+    /**
+     * 清除所有手指
+     *
+     * @param activePointerId 新的控制拖动的手指
+     */
+    private void resetPointers(int activePointerId) {
+        mPointerCount = 0;
+        mActivePointerId = activePointerId;
+    }
+
+    /**
+     * 记录事件中所有手指的位置
+     *
+     * @param skipIndex 跳过的下标 (正在抬起的手指)，-1表示不跳过
+     */
+    private void updatePointerPositions(MotionEvent event, int skipIndex) {
+        for (int i = 0; i < event.getPointerCount(); i++) {
+            if (i != skipIndex) {
+                setPointerPosition(event.getPointerId(i), event.getX(i), event.getY(i));
+            }
+        }
+    }
+
+    private void setPointerPosition(int pointerId, float x, float y) {
+        int slot = indexOfPointer(pointerId);
+        if (slot < 0) {
+            if (mPointerCount == MAX_POINTER_COUNT) {
+                return;
+            }
+            slot = mPointerCount++;
+            mPointerIds[slot] = pointerId;
+        }
+        mPointerLastX[slot] = x;
+        mPointerLastY[slot] = y;
+    }
+
+    private void removePointer(int pointerId) {
+        int slot = indexOfPointer(pointerId);
+        if (slot >= 0) {
+            //用最后一个填补空位
+            int last = --mPointerCount;
+            mPointerIds[slot] = mPointerIds[last];
+            mPointerLastX[slot] = mPointerLastX[last];
+            mPointerLastY[slot] = mPointerLastY[last];
+        }
+    }
+
+    private int indexOfPointer(int pointerId) {
+        for (int i = 0; i < mPointerCount; i++) {
+            if (mPointerIds[i] == pointerId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * 处理 ACTION_MOVE 事件
+     *
+     * @param pointerIndex 控制拖动的手指在事件中的下标
      */
-    private void handleActionMove(MotionEvent event, float x, float y) {
+    private void handleActionMove(MotionEvent event, int pointerIndex) {
         if (isGhostViewShown) {
             //手指未松开才更新
-            if (!isGhostViewLostControl && !isAlphaAnimationRunning && mGhostView != null) {
-                mGhostView.updateOffset(x - mLastX, y - mLastY);
+            if (!isGhostViewLostControl && !isDismissPending && !isAlphaAnimationRunning && mGhostView != null) {
+                float x = event.getX(pointerIndex), y = event.getY(pointerIndex);
+                int slot = indexOfPointer(mActivePointerId);
+                float offsetX = slot < 0 ? 0 : x - mPointerLastX[slot];
+                float offsetY = slot < 0 ? 0 : y - mPointerLastY[slot];
+                addMovement(event, pointerIndex);
+                mGhostView.updateOffset(offsetX, offsetY);
                 updateState(STATE_DRAGGING);
             }
         } else {
+            addGhostView();
+            //Bitmap左上角在本布局中的位置 (子View的位置已包含padding和margin)
+            float bitmapLeft = mChild.getLeft() + mSnapshotBounds.left;
+            float bitmapTop = mChild.getTop() + mSnapshotBounds.top;
+            if (mTiledSnapshot != null) {
+                mGhostView.onDown(event, pointerIndex, mTiledSnapshot, bitmapLeft, bitmapTop);
+            } else {
+                mGhostView.onDown(event, pointerIndex, mSnapshot, bitmapLeft, bitmapTop);
+            }
+            onGhostViewShown();
+            mVelocityEstimator.clear();
+            addMovement(event, pointerIndex);
+        }
+    }
+
+    /**
+     * 创建快照并添加GhostView (还没有设置位置)
+     */
+    private void addGhostView() {
+        if (isTiledSnapshotEnabled) {
+            //分块快照在GhostView绘制时才会创建每一块
+            mTiledSnapshot = new TiledSnapshot(mChild, mSnapshotTileSize);
+            mSnapshotBounds.set(0, 0, mTiledSnapshot.getWidth(), mTiledSnapshot.getHeight());
+        } else {
+            mSnapshot = createSnapshot();
+        }
+        setChildVisibility(INVISIBLE);
+        initializeGhostView();
+        mRootView.addView(mGhostView, LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
+    }
+
+    /**
+     * GhostView已经添加并设置好位置
+     */
+    private void onGhostViewShown() {
+        isGhostViewShown = true;
+        postRefreshTask();
+        if (isQualityGovernorEnabled) {
+            //不能缩小的话，连续掉帧时直接跳到下一级
+            mQualityGovernor.setSkippedLevel(canDownscaleSnapshot() ? -1 : QUALITY_DOWNSCALED);
+            mQualityGovernor.start();
+        }
+    }
+
+    /**
+     * 取消代码触发的移除 (重置或回收时)：从调度器中移除还没开始的任务，所属的批次把本布局算作跳过
+     */
+    private void cancelDismiss() {
+        DismissScheduler.getInstance().cancel(this);
+        if (mDismissBatch != null) {
+            DismissScheduler.Batch batch = mDismissBatch;
+            mDismissBatch = null;
+            batch.onLayoutFinished(false);
+        }
+    }
+
+    /**
+     * 代码触发移除的第一步：创建快照并在子View原来的位置显示GhostView (由{@link DismissScheduler}调用)
+     *
+     * @param batch 所属的批次
+     * @return 当前状态不能移除 (正在拖动、已经移除过但没有reset、还没有显示出来等) 返回 false
+     */
+    boolean prepareDismiss(DismissScheduler.Batch batch) {
+        if (mChild == null || mRootView == null || getWindowToken() == null || isBeingDragged || isGhostViewShown
+                || mChild.getVisibility() != VISIBLE || mChild.getWidth() == 0 || mChild.getHeight() == 0) {
+            return false;
+        }
+        addGhostView();
+        //GhostView的坐标系与触摸事件的getRawX/Y一致
+        int[] location = new int[2];
+        getLocationOnScreen(location);
+        float bitmapRawLeft = location[0] + mChild.getLeft() + mSnapshotBounds.left;
+        float bitmapRawTop = location[1] + mChild.getTop() + mSnapshotBounds.top;
+        if (mTiledSnapshot != null) {
+            mGhostView.onDismiss(mTiledSnapshot, bitmapRawLeft, bitmapRawTop);
+        } else {
+            mGhostView.onDismiss(mSnapshot, bitmapRawLeft, bitmapRawTop);
+        }
+        //不再响应手指，但还不能标记为脱离手指，否则这一帧的computeScroll会直接移除GhostView
+        isDismissPending = true;
+        mDismissBatch = batch;
+        onGhostViewShown();
+        return true;
+    }
+
+    /**
+     * 代码触发移除的第二步：开始位移动画或惯性移动 (在{@link #prepareDismiss}的下一帧调用，此时GhostView已经绘制过)
+     *
+     * @param orientation 移除方向，为-1时按速率惯性移动
+     * @param xVelocity   X轴上的速率 (px/s)
+     * @param yVelocity   Y轴上的速率 (px/s)
+     */
+    void startDismiss(int orientation, float xVelocity, float yVelocity) {
+        //中途被recycle了
+        if (mGhostView == null || !isDismissPending) {
+            return;
+        }
+        isDismissPending = false;
+        isGhostViewLostControl = true;
+        if (orientation == -1) {
+            //惯性移动的初速度沿用之前的单位 (px/500ms)
+            startFling(clampVelocity(xVelocity) / 2, clampVelocity(yVelocity) / 2);
+        } else {
+            startAnimator(orientation);
+        }
+    }
+
+    /**
+     * 把子View绘制到Bitmap上
+     *
+     * @return GhostView要绘制的Bitmap (裁剪后的或完整的)
+     */
+    private Bitmap createSnapshot() {
+        //需要重绘的View内容会变，不能共享
+        if (mContentKey != null && mChildRefreshTask == null) {
+            return obtainSharedSnapshot();
+        }
+        int width = mChild.getWidth(), height = mChild.getHeight();
+        //需要重绘的View内容会变，不能裁剪
+        boolean trim = isTrimTransparentEdges && mChildRefreshTask == null;
+        Bitmap snapshot;
+        if (trim && hasValidContentBounds(width, height)) {
+            //内容边界没变，直接按内容尺寸绘制，不用再扫描
+            mSnapshotBounds.set(mContentBounds);
+            updateBitmapSize(mSnapshotBounds.width(), mSnapshotBounds.height());
+            mCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            drawChild(mCanvas, mSnapshotBounds);
+            snapshot = mBitmap;
+        } else {
+            updateBitmapSize(width, height);
+            mCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
             mChild.draw(mCanvas);
-            mChild.setVisibility(INVISIBLE);
-            initializeGhostView();
-            mRootView.addView(mGhostView, LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
+            mSnapshotBounds.set(0, 0, width, height);
+            snapshot = mBitmap;
+            if (trim && updateContentBounds(mBitmap)) {
+                mSnapshotBounds.set(mContentBounds);
+                snapshot = Bitmap.createBitmap(mBitmap, mSnapshotBounds.left, mSnapshotBounds.top,
+                        mSnapshotBounds.width(), mSnapshotBounds.height());
+                //完整尺寸的Bitmap只是用来计算边界，不再保留，下次会按内容尺寸创建
+                mBitmap = null;
+                mCanvas = null;
+            }
+        }
+        if (canUseHardwareSnapshot()) {
+            Bitmap hardwareSnapshot = copyToHardwareBitmap(snapshot);
+            if (hardwareSnapshot != null) {
+                //绘制用的Bitmap已经没用了，马上释放，下次拖动时再创建
+                mBitmap = null;
+                mCanvas = null;
+                return hardwareSnapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 是否可以使用HARDWARE类型的Bitmap：API 26+，硬件加速的窗口，并且是静态的View
+     */
+    private boolean canUseHardwareSnapshot() {
+        return isHardwareSnapshotEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                && mChildRefreshTask == null && mRootView != null && mRootView.isHardwareAccelerated()
+                && mRootView.getLayerType() != LAYER_TYPE_SOFTWARE;
+    }
+
+    /**
+     * 是否HARDWARE类型的Bitmap
+     */
+    private boolean isHardwareBitmap(Bitmap bitmap) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && bitmap.getConfig() == Bitmap.Config.HARDWARE;
+    }
+
+    /**
+     * 复制成HARDWARE类型的Bitmap
+     *
+     * @return 复制失败返回null
+     */
+    @TargetApi(Build.VERSION_CODES.O)
+    private Bitmap copyToHardwareBitmap(Bitmap bitmap) {
+        return bitmap.copy(Bitmap.Config.HARDWARE, false);
+    }
+
+    /**
+     * 从缓存中获取共享的Bitmap，没有的话就绘制一个新的放进缓存
+     *
+     * @return GhostView要绘制的Bitmap
+     */
+    private Bitmap obtainSharedSnapshot() {
+        int width = mChild.getWidth(), height = mChild.getHeight();
+        SnapshotCache cache = SnapshotCache.getInstance();
+        mSharedSnapshot = cache.acquire(mContentKey, width, height);
+        if (mSharedSnapshot == null) {
+            //共享的Bitmap不能用自己的画布，要单独创建
+            Bitmap bitmap;
+            if (isTrimTransparentEdges && hasValidContentBounds(width, height)) {
+                mSnapshotBounds.set(mContentBounds);
+                bitmap = Bitmap.createBitmap(mSnapshotBounds.width(), mSnapshotBounds.height(), Bitmap.Config.ARGB_8888);
+                drawChild(new Canvas(bitmap), mSnapshotBounds);
+            } else {
+                bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                mChild.draw(new Canvas(bitmap));
+                mSnapshotBounds.set(0, 0, width, height);
+                if (isTrimTransparentEdges && updateContentBounds(bitmap)) {
+                    mSnapshotBounds.set(mContentBounds);
+                    //完整尺寸的Bitmap随即被丢弃
+                    bitmap = Bitmap.createBitmap(bitmap, mSnapshotBounds.left, mSnapshotBounds.top,
+                            mSnapshotBounds.width(), mSnapshotBounds.height());
+                }
+            }
+            if (canUseHardwareSnapshot()) {
+                Bitmap hardwareSnapshot = copyToHardwareBitmap(bitmap);
+                if (hardwareSnapshot != null) {
+                    bitmap = hardwareSnapshot;
+                }
+            }
+            mSharedSnapshot = cache.put(mContentKey, width, height, bitmap, mSnapshotBounds);
+        }
+        hasUsedSharedSnapshot = true;
+        mSnapshotBounds.set(mSharedSnapshot.bounds);
+        return mSharedSnapshot.bitmap;
+    }
 
-            MarginLayoutParams layoutParams = (MarginLayoutParams) mChild.getLayoutParams();
-            event.offsetLocation(-layoutParams.leftMargin, -layoutParams.topMargin);
+    /**
+     * 把子View的某个区域绘制到画布的左上角
+     *
+     * @param bounds 子View中要绘制的区域
+     */
+    private void drawChild(Canvas canvas, Rect bounds) {
+        int saveCount = canvas.save();
+        canvas.translate(-bounds.left, -bounds.top);
+        mChild.draw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
 
-            mGhostView.onDown(event, mBitmap);
-            isGhostViewShown = true;
-            postRefreshTask();
+    /**
+     * 缓存的内容边界是否还可以用
+     */
+    private boolean hasValidContentBounds(int width, int height) {
+        return isContentBoundsValid && mContentBoundsWidth == width && mContentBoundsHeight == height;
+    }
+
+    /**
+     * 根据完整尺寸的Bitmap重新计算并缓存内容边界
+     *
+     * @return 边界比Bitmap小 (需要裁剪) 返回 true，反之
+     */
+    private boolean updateContentBounds(Bitmap bitmap) {
+        mContentBoundsWidth = bitmap.getWidth();
+        mContentBoundsHeight = bitmap.getHeight();
+        if (!computeContentBounds(bitmap, mContentBounds)) {
+            mContentBounds.set(0, 0, mContentBoundsWidth, mContentBoundsHeight);
         }
+        isContentBoundsValid = true;
+        return mContentBounds.width() < mContentBoundsWidth || mContentBounds.height() < mContentBoundsHeight;
+    }
+
+    /**
+     * 计算Bitmap中非完全透明像素的最小边界：从四条边分别向内逐行/逐列扫描，遇到第一个不透明的像素就停止，
+     * 所以只会读取透明边缘和紧挨着它的一行/一列，而不是整个Bitmap
+     *
+     * @param bitmap 目标Bitmap
+     * @param bounds 用来接收结果
+     * @return 有不透明的像素返回 true，全透明返回 false
+     */
+    private boolean computeContentBounds(Bitmap bitmap, Rect bounds) {
+        int width = bitmap.getWidth(), height = bitmap.getHeight();
+        if (mScanPixels == null || mScanPixels.length < Math.max(width, height)) {
+            mScanPixels = new int[Math.max(width, height)];
+        }
+        int top = 0;
+        while (top < height && isTransparent(bitmap, 0, top, width, 1)) {
+            top++;
+        }
+        //全透明的话就不裁剪了
+        if (top == height) {
+            return false;
+        }
+        int bottom = height - 1;
+        while (bottom > top && isTransparent(bitmap, 0, bottom, width, 1)) {
+            bottom--;
+        }
+        //左右两边只需要扫描上下边界之间的部分
+        int rows = bottom - top + 1;
+        int left = 0;
+        while (left < width && isTransparent(bitmap, left, top, 1, rows)) {
+            left++;
+        }
+        int right = width - 1;
+        while (right > left && isTransparent(bitmap, right, top, 1, rows)) {
+            right--;
+        }
+        bounds.set(left, top, right + 1, bottom + 1);
+        return true;
+    }
+
+    /**
+     * 判断Bitmap中某一行或某一列的区域是否完全透明
+     */
+    private boolean isTransparent(Bitmap bitmap, int x, int y, int width, int height) {
+        bitmap.getPixels(mScanPixels, 0, width, x, y, width, height);
+        for (int i = width * height - 1; i >= 0; i--) {
+            if (Color.alpha(mScanPixels[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 把触摸事件 (包括历史事件) 添加到速率采样中
+     *
+     * @param pointerIndex 控制拖动的手指在事件中的下标
+     */
+    private void addMovement(MotionEvent event, int pointerIndex) {
+        for (int i = 0; i < event.getHistorySize(); i++) {
+            mVelocityEstimator.addMovement(event.getHistoricalX(pointerIndex, i),
+                    event.getHistoricalY(pointerIndex, i), event.getHistoricalEventTime(i));
+        }
+        mVelocityEstimator.addMovement(event.getX(pointerIndex), event.getY(pointerIndex), event.getEventTime());
     }
 
     /**
      * 处理 ACTION_UP 事件
+     *
+     * @param pointerIndex 控制拖动的手指在事件中的下标，-1表示事件中没有该手指
      */
-    private void handleActionUp() {
+    private void handleActionUp(MotionEvent event, int pointerIndex) {
         //如果位移或透明渐变动画正在播放则不处理
-        if (!isGhostViewLostControl && !isAlphaAnimationRunning && mGhostView != null) {
+        if (!isGhostViewLostControl && !isDismissPending && !isAlphaAnimationRunning && mGhostView != null) {
             isBeingDragged = false;
             isGhostViewLostControl = true;
-            mVelocityTracker.computeCurrentVelocity(500);
-            float xVelocity = mVelocityTracker.getXVelocity();
-            float yVelocity = mVelocityTracker.getYVelocity();
-            if (isOneBiggerThan(xVelocity, yVelocity, 1000)) {
-                startFling(xVelocity, yVelocity);
+            if (pointerIndex >= 0) {
+                addMovement(event, pointerIndex);
+            }
+            mVelocityEstimator.computeCurrentVelocity(1000);
+            float xVelocity = clampVelocity(mVelocityEstimator.getXVelocity());
+            float yVelocity = clampVelocity(mVelocityEstimator.getYVelocity());
+            if (isOneBiggerThan(xVelocity, yVelocity, mFlingVelocityThreshold)) {
+                //惯性移动的初速度沿用之前的单位 (px/500ms)，保持惯性移动的距离不变
+                startFling(xVelocity / 2, yVelocity / 2);
             } else {
                 startAnimator();
             }
@@ -315,11 +1091,21 @@ public class RandomDragLayout extends ViewGroup {
     }
 
     /**
-     * 播放位移动画
+     * 播放位移动画 (根据当前位置决定方向)
      */
     private void startAnimator() {
-        mAnimator = ValueAnimator.ofObject(mEvaluator, mGhostView.getAnimationStartPoint(),
-                mGhostView.getAnimationEndPoint()).setDuration(mFlingDuration);
+        startAnimator(-1);
+    }
+
+    /**
+     * 播放位移动画
+     *
+     * @param orientation 移动方向，为-1时根据当前位置决定
+     */
+    private void startAnimator(int orientation) {
+        PointF startPoint = mGhostView.getAnimationStartPoint();
+        PointF endPoint = orientation == -1 ? mGhostView.getAnimationEndPoint() : mGhostView.getAnimationEndPoint(orientation);
+        mAnimator = ValueAnimator.ofObject(mEvaluator, startPoint, endPoint).setDuration(mFlingDuration);
 
         mAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
             @Override
@@ -331,6 +1117,9 @@ public class RandomDragLayout extends ViewGroup {
         });
         mAnimator.start();
         updateState(STATE_FLEEING);
+        if (mQualityGovernor.isRunning() && mQualityGovernor.getLevel() >= QUALITY_FINISH_EARLY) {
+            finishEarly();
+        }
     }
 
     /**
@@ -349,7 +1138,9 @@ public class RandomDragLayout extends ViewGroup {
                 updateState(STATE_OUT_OF_SCREEN);
             }
         });
-        if (mOnDragListener != null) {
+        if (mDispatcher != null) {
+            mGhostView.setOnDragListener(mDispatcher);
+        } else if (mOnDragListener != null) {
             mGhostView.setOnDragListener(mOnDragListener);
         }
     }
@@ -367,10 +1158,17 @@ public class RandomDragLayout extends ViewGroup {
     /**
      * 判断前两个参数是否至少一个大于第三个参数
      */
-    private boolean isOneBiggerThan(float value1, float value2, int target) {
+    private boolean isOneBiggerThan(float value1, float value2, float target) {
         return Math.abs(value1) > target || Math.abs(value2) > target;
     }
 
+    /**
+     * 限制速率不超过{@link #mMaxFlingVelocity}
+     */
+    private float clampVelocity(float velocity) {
+        return Math.max(-mMaxFlingVelocity, Math.min(velocity, mMaxFlingVelocity));
+    }
+
     /**
      * 开始惯性移动
      */
@@ -384,30 +1182,41 @@ public class RandomDragLayout extends ViewGroup {
 
     @Override
     public boolean onInterceptTouchEvent(MotionEvent event) {
-        if (!isEnabled()) {
+        if (!isEnabled() || shouldIgnoreEvent(event)) {
             return false;
         }
-        if ((event.getAction() == MotionEvent.ACTION_MOVE && isBeingDragged) || super.onInterceptTouchEvent(event)) {
+        if ((event.getActionMasked() == MotionEvent.ACTION_MOVE && isBeingDragged) || super.onInterceptTouchEvent(event)) {
             //如果已经开始了拖动，则继续占用此次事件
             requestDisallowInterceptTouchEvent(true);
             return true;
         }
-        float x = event.getX(), y = event.getY();
-        switch (event.getAction()) {
+        switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
-                mLastX = x;
-                mLastY = y;
+                resetPointers(event.getPointerId(0));
+                updatePointerPositions(event, -1);
+                break;
+            case MotionEvent.ACTION_POINTER_DOWN:
+                int actionIndex = event.getActionIndex();
+                setPointerPosition(event.getPointerId(actionIndex), event.getX(actionIndex), event.getY(actionIndex));
                 break;
             case MotionEvent.ACTION_MOVE:
-                float offsetX = x - mLastX;
-                float offsetY = y - mLastY;
+                int pointerIndex = event.findPointerIndex(mActivePointerId);
+                int slot = indexOfPointer(mActivePointerId);
+                if (pointerIndex < 0 || slot < 0) {
+                    break;
+                }
+                float x = event.getX(pointerIndex), y = event.getY(pointerIndex);
+                float offsetX = x - mPointerLastX[slot];
+                float offsetY = y - mPointerLastY[slot];
                 //判断是否触发拖动事件
                 if (isOneBiggerThan(offsetX, offsetY, mTouchSlop)) {
-                    mLastX = x;
-                    mLastY = y;
+                    updatePointerPositions(event, -1);
                     isBeingDragged = true;
                 }
                 break;
+            case MotionEvent.ACTION_POINTER_UP:
+                handleActionPointerUp(event);
+                break;
             case MotionEvent.ACTION_UP:
             case MotionEvent.ACTION_CANCEL:
             case MotionEvent.ACTION_OUTSIDE:
@@ -443,6 +1252,30 @@ public class RandomDragLayout extends ViewGroup {
         setMeasuredDimension(width, height);
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        //拖动或动画进行中被移除的话，onOutOfScreen和渐变动画结束的回调都不会再来了，
+        //需要强制回收，否则渲染质量调节器的帧回调会一直运行下去，并持有Activity
+        if (mGhostView != null) {
+            //DecorView可能正在遍历子View分发detach (Activity销毁、旋转屏幕)，这时候不能移除GhostView，
+            //先停掉所有会持续运行的任务，回收操作留到之后再执行
+            mQualityGovernor.stop();
+            abortAnimation();
+            mGhostView.animate().setListener(null).cancel();
+            removeCallbacks(mGhostViewReleaseTask);
+            removeRefreshTask();
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mGhostView != null) {
+                        recycle();
+                    }
+                }
+            });
+        }
+    }
+
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
         MarginLayoutParams layoutParams = (MarginLayoutParams) mChild.getLayoutParams();
@@ -451,6 +1284,17 @@ public class RandomDragLayout extends ViewGroup {
                 mChild.getMeasuredHeight() - getPaddingBottom() + layoutParams.topMargin);
     }
 
+    /**
+     * 根据子View的尺寸更新画布 (只包含子View自身，不包括margin和padding)
+     * 在开始拖动时才创建，使用共享Bitmap的话就不需要创建了
+     */
+    private void updateBitmapSize(int width, int height) {
+        if (width > 0 && height > 0 && (mBitmap == null
+                || mBitmap.getWidth() != width || mBitmap.getHeight() != height)) {
+            mCanvas = new Canvas(mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888));
+        }
+    }
+
     /**
      * 重写父类addView方法，仅允许拥有一个直接子View
      */
@@ -463,11 +1307,52 @@ public class RandomDragLayout extends ViewGroup {
         mChild = child;
     }
 
+    @Override
+    public void onDescendantInvalidated(View child, View target) {
+        super.onDescendantInvalidated(child, target);
+        onChildInvalidated();
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public ViewParent invalidateChildInParent(int[] location, Rect dirty) {
+        onChildInvalidated();
+        return super.invalidateChildInParent(location, dirty);
+    }
+
+    /**
+     * 子View重绘时，使缓存的内容边界和共享的Bitmap失效 (GhostView存在期间和修改子View可见性时除外)
+     * 拖动结束后到reset之前子View也可能被重新绑定，所以不能用isGhostViewShown判断
+     */
+    private void onChildInvalidated() {
+        if (mGhostView != null || isChangingChildVisibility) {
+            return;
+        }
+        isContentBoundsValid = false;
+        if (hasUsedSharedSnapshot) {
+            hasUsedSharedSnapshot = false;
+            invalidateContentSnapshot();
+        }
+    }
+
+    private void setChildVisibility(int visibility) {
+        isChangingChildVisibility = true;
+        mChild.setVisibility(visibility);
+        isChangingChildVisibility = false;
+    }
+
     private float mLastScrollOffsetX, mLastScrollOffsetY;
 
     @Override
     public void computeScroll() {
         if (mScroller.computeScrollOffset()) {
+            //GhostView已经被移除，惯性移动也没有意义了
+            if (mGhostView == null) {
+                mScroller.abortAnimation();
+                mLastScrollOffsetX = 0;
+                mLastScrollOffsetY = 0;
+                return;
+            }
             float y = mScroller.getCurrY() * mScrollAvailabilityRatio;
             float x = mScroller.getCurrX() * mScrollAvailabilityRatio;
             mGhostView.updateOffset(x - mLastScrollOffsetX, y - mLastScrollOffsetY);
@@ -477,23 +1362,7 @@ public class RandomDragLayout extends ViewGroup {
         } else if (mScroller.isFinished()) {
             if (isGhostViewLostControl && mRootView != null) {
                 //防止报：Attempt to read from field 'int android.view.View.mViewFlags' on a null object reference
-                post(new Runnable() {
-                    @Override
-                    public void run() {
-                        if (mGhostView != null) {
-                            //如果是超出了屏幕，则不播放渐变动画，直接移除
-                            if (mState == STATE_OUT_OF_SCREEN) {
-                                mRootView.removeView(mGhostView);
-                                mGhostView = null;
-                                isAlphaAnimationRunning = false;
-                                removeRefreshTask();
-                            } else {
-                                startAlphaAnimation();
-                            }
-                            isGhostViewLostControl = false;
-                        }
-                    }
-                });
+                post(mGhostViewReleaseTask);
             }
             //惯性移动完毕，重置偏移量
             mLastScrollOffsetX = 0;
@@ -501,6 +1370,28 @@ public class RandomDragLayout extends ViewGroup {
         }
     }
 
+    /**
+     * 初始化GhostView的移除任务 (在computeScroll中post，强制回收时需要取消)
+     */
+    private void initGhostViewReleaseTask() {
+        mGhostViewReleaseTask = new Runnable() {
+            @Override
+            public void run() {
+                if (mGhostView != null) {
+                    //如果是超出了屏幕，则不播放渐变动画，直接移除
+                    if (mState == STATE_OUT_OF_SCREEN) {
+                        removeGhostView();
+                        isAlphaAnimationRunning = false;
+                        removeRefreshTask();
+                    } else {
+                        startAlphaAnimation();
+                    }
+                    isGhostViewLostControl = false;
+                }
+            }
+        };
+    }
+
     /***
      * 播放透明渐变动画，然后移除GhostView
      */
@@ -510,8 +1401,7 @@ public class RandomDragLayout extends ViewGroup {
             mGhostView.animate().alpha(0).setDuration(mAlphaDuration).setListener(new AnimatorListenerAdapter() {
                 @Override
                 public void onAnimationEnd(Animator animation) {
-                    mRootView.removeView(mGhostView);
-                    mGhostView = null;
+                    removeGhostView();
                     isAlphaAnimationRunning = false;
                     updateState(STATE_GONE);
                     removeRefreshTask();
@@ -520,6 +1410,109 @@ public class RandomDragLayout extends ViewGroup {
         }
     }
 
+    /**
+     * 移除GhostView，本次拖动结束
+     */
+    private void removeGhostView() {
+        if (mGhostView != null) {
+            mRootView.removeView(mGhostView);
+            mGhostView = null;
+        }
+        if (mQualityGovernor.isRunning()) {
+            mQualityGovernor.stop();
+            if (mOnQualityReportListener != null) {
+                mOnQualityReportListener.onQualityReport(mQualityGovernor.getLevel());
+            }
+        }
+        mSnapshot = null;
+        mScaledSnapshot = null;
+        if (mTiledSnapshot != null) {
+            mTiledSnapshot.release();
+            mTiledSnapshot = null;
+        }
+        if (mSharedSnapshot != null) {
+            SnapshotCache.getInstance().release(mSharedSnapshot);
+            mSharedSnapshot = null;
+        }
+        isDismissPending = false;
+        if (mDismissBatch != null) {
+            DismissScheduler.Batch batch = mDismissBatch;
+            mDismissBatch = null;
+            batch.onLayoutFinished(true);
+        }
+    }
+
+    /**
+     * 初始化渲染质量调节器
+     */
+    private void initQualityGovernor() {
+        mQualityGovernor = new QualityGovernor(new QualityGovernor.OnLevelChangeListener() {
+            @Override
+            public void onLevelChanged(int oldLevel, int newLevel) {
+                applyQualityLevel(oldLevel, newLevel);
+            }
+        });
+    }
+
+    /**
+     * 应用新的渲染质量等级 (每次只会升或降一级)
+     */
+    private void applyQualityLevel(int oldLevel, int newLevel) {
+        if (mGhostView == null) {
+            return;
+        }
+        boolean degrade = newLevel > oldLevel;
+        switch (degrade ? newLevel : oldLevel) {
+            case QUALITY_PAUSE_REFRESH:
+                removeRefreshTask();
+                if (!degrade) {
+                    postRefreshTask();
+                }
+                break;
+            case QUALITY_DOWNSCALED:
+                if (!canDownscaleSnapshot()) {
+                    break;
+                }
+                if (degrade) {
+                    if (mScaledSnapshot == null) {
+                        mScaledSnapshot = Bitmap.createScaledBitmap(mSnapshot,
+                                Math.max(1, mSnapshot.getWidth() / 2), Math.max(1, mSnapshot.getHeight() / 2), true);
+                    }
+                    mGhostView.setBitmap(mScaledSnapshot);
+                } else {
+                    mGhostView.setBitmap(mSnapshot);
+                    mScaledSnapshot = null;
+                }
+                break;
+            case QUALITY_FINISH_EARLY:
+                //已经提前结束的动画无法还原
+                if (degrade) {
+                    finishEarly();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 当前的快照是否可以缩小：
+     * 分块快照不缩小；HARDWARE类型的Bitmap在显存中，缩小需要先拷贝回内存 (API 26直接抛异常)，
+     * 而且它的绘制本来就不占用UI线程，缩小也没有收益
+     */
+    private boolean canDownscaleSnapshot() {
+        return mSnapshot != null && !isHardwareBitmap(mSnapshot);
+    }
+
+    /**
+     * 提前结束位移动画：直接跳到终点 (屏幕外)，GhostView随即被移除
+     */
+    private void finishEarly() {
+        if (mAnimator != null && mAnimator.isRunning()) {
+            mAnimator.end();
+        }
+    }
+
     /**
      * 更新状态并回调监听器
      *
@@ -528,7 +1521,9 @@ public class RandomDragLayout extends ViewGroup {
     private void updateState(int newState) {
         if (mState != newState) {
             mState = newState;
-            if (mOnStateChangeListener != null) {
+            if (mDispatcher != null) {
+                mDispatcher.onStateChanged(newState);
+            } else if (mOnStateChangeListener != null) {
                 mOnStateChangeListener.onStateChanged(newState);
             }
         }
@@ -607,6 +1602,24 @@ public class RandomDragLayout extends ViewGroup {
         void onStateChanged(int newState);
     }
 
+    public interface OnQualityReportListener {
+        /**
+         * 每次拖动结束 (GhostView被移除) 时回调
+         *
+         * @param qualityLevel 结束时的渲染质量等级 {@link #QUALITY_FULL} ~ {@link #QUALITY_FINISH_EARLY}
+         */
+        void onQualityReport(int qualityLevel);
+    }
+
+    public interface OnDismissListener {
+        /**
+         * 一批代码触发的移除全部结束时回调
+         *
+         * @param dismissedCount 真正被移除的布局数量 (被跳过的不算)
+         */
+        void onDismissed(int dismissedCount);
+    }
+
     public interface OnDragListener {
         /**
          * 拖动更新时回调
@@ -0,0 +1,183 @@
+package com.wuyr.randomdraglayout;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 多个RandomDragLayout之间共享的Bitmap缓存 (只能在主线程使用)
+ * 内容标识和尺寸都相同的子View共用同一个Bitmap，
+ * 正在使用中的Bitmap不会被回收，没在使用的按最近最少使用的顺序淘汰，直到总大小不超过上限
+ *
+ * @author wuyr
+ * @github https://github.com/wuyr/RandomDragLayout
+ * @since 2026-10-19
+ */
+class SnapshotCache {
+
+    private static final int DEFAULT_MAX_SIZE = 8 * 1024 * 1024;
+
+    private static SnapshotCache sInstance;
+
+    private final LinkedHashMap<Key, Entry> mEntries;//按访问顺序排列
+    private int mMaxSize;//总大小上限 (bytes)
+    private int mSize;//当前总大小 (bytes)
+
+    private SnapshotCache() {
+        mEntries = new LinkedHashMap<>(16, .75F, true);
+        mMaxSize = DEFAULT_MAX_SIZE;
+    }
+
+    static SnapshotCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new SnapshotCache();
+        }
+        return sInstance;
+    }
+
+    /**
+     * 设置缓存总大小上限
+     *
+     * @param maxSize 单位: bytes
+     */
+    void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        trimToSize();
+    }
+
+    /**
+     * 获取缓存的Bitmap，获取成功后引用计数 + 1，用完后需调用{@link #release(Entry)}
+     *
+     * @return 没有对应的缓存时返回null
+     */
+    Entry acquire(Object contentKey, int width, int height) {
+        Entry entry = mEntries.get(new Key(contentKey, width, height));
+        if (entry != null) {
+            entry.refCount++;
+        }
+        return entry;
+    }
+
+    /**
+     * 放入新的Bitmap (会替换掉旧的)，引用计数为1，用完后需调用{@link #release(Entry)}
+     *
+     * @param width  子View的宽度
+     * @param height 子View的高度
+     * @param bitmap 子View的Bitmap (可能是裁剪过的)
+     * @param bounds Bitmap在子View中的区域
+     */
+    Entry put(Object contentKey, int width, int height, Bitmap bitmap, Rect bounds) {
+        Key key = new Key(contentKey, width, height);
+        Entry entry = new Entry(key, bitmap, bounds);
+        entry.refCount = 1;
+        remove(mEntries.put(key, entry));
+        mSize += entry.size;
+        trimToSize();
+        return entry;
+    }
+
+    /**
+     * 引用计数 - 1
+     */
+    void release(Entry entry) {
+        if (entry.refCount > 0) {
+            entry.refCount--;
+        }
+        if (entry.refCount == 0 && !entry.isRemoved && mSize > mMaxSize) {
+            trimToSize();
+        }
+    }
+
+    /**
+     * 移除该内容标识对应的所有缓存 (正在使用的Bitmap不受影响，下次获取时会重新生成)
+     */
+    void invalidate(Object contentKey) {
+        Iterator<Map.Entry<Key, Entry>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (entry.key.contentKey.equals(contentKey)) {
+                iterator.remove();
+                remove(entry);
+            }
+        }
+    }
+
+    /**
+     * 移除所有缓存
+     */
+    void clear() {
+        for (Entry entry : mEntries.values()) {
+            entry.isRemoved = true;
+        }
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    private void remove(Entry entry) {
+        if (entry != null) {
+            entry.isRemoved = true;
+            mSize -= entry.size;
+        }
+    }
+
+    /**
+     * 按最近最少使用的顺序移除没在使用的缓存，直到总大小不超过上限
+     */
+    private void trimToSize() {
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.refCount == 0) {
+                iterator.remove();
+                remove(entry);
+            }
+        }
+    }
+
+    static final class Entry {
+        final Key key;
+        final Bitmap bitmap;
+        final Rect bounds;//Bitmap在子View中的区域
+        final int size;
+        int refCount;
+        boolean isRemoved;//已经不在缓存中
+
+        Entry(Key key, Bitmap bitmap, Rect bounds) {
+            this.key = key;
+            this.bitmap = bitmap;
+            this.bounds = new Rect(bounds);
+            size = bitmap.getByteCount();
+        }
+    }
+
+    private static final class Key {
+        final Object contentKey;
+        final int width, height;
+
+        Key(Object contentKey, int width, int height) {
+            this.contentKey = contentKey;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return width == key.width && height == key.height && contentKey.equals(key.contentKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * contentKey.hashCode() + width) + height;
+        }
+    }
+}
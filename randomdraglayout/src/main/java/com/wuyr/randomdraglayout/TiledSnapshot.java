@@ -0,0 +1,143 @@
+package com.wuyr.randomdraglayout;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.view.View;
+
+/**
+ * 分块的子View快照 (用于很大的子View)
+ * 子View被切分成固定尺寸的小块，每一块在第一次需要绘制时才创建，
+ * 已经确定不会再出现在屏幕上的块可以提前释放
+ *
+ * @author wuyr
+ * @github https://github.com/wuyr/RandomDragLayout
+ * @since 2026-10-19
+ */
+class TiledSnapshot {
+
+    private View mChild;
+    private final int mWidth, mHeight;
+    private final int mTileSize;
+    private final int mColumnCount, mRowCount;
+    private final Bitmap[] mTiles;
+    private final boolean[] isTileDiscarded;//已经释放并且不会再创建
+    private final Canvas mCanvas;
+
+    /**
+     * @param child    要绘制的子View
+     * @param tileSize 每一块的边长
+     */
+    TiledSnapshot(View child, int tileSize) {
+        mChild = child;
+        mWidth = child.getWidth();
+        mHeight = child.getHeight();
+        mTileSize = tileSize;
+        mColumnCount = (mWidth + tileSize - 1) / tileSize;
+        mRowCount = (mHeight + tileSize - 1) / tileSize;
+        mTiles = new Bitmap[mColumnCount * mRowCount];
+        isTileDiscarded = new boolean[mTiles.length];
+        mCanvas = new Canvas();
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    int getTileSize() {
+        return mTileSize;
+    }
+
+    int getColumnCount() {
+        return mColumnCount;
+    }
+
+    int getRowCount() {
+        return mRowCount;
+    }
+
+    /**
+     * 获取某一块的宽度 (最右边一列可能会比较窄)
+     */
+    int getTileWidth(int column) {
+        return Math.min(mTileSize, mWidth - column * mTileSize);
+    }
+
+    /**
+     * 获取某一块的高度 (最下面一行可能会比较矮)
+     */
+    int getTileHeight(int row) {
+        return Math.min(mTileSize, mHeight - row * mTileSize);
+    }
+
+    boolean isTileDiscarded(int column, int row) {
+        return isTileDiscarded[row * mColumnCount + column];
+    }
+
+    /**
+     * 获取某一块的Bitmap，还没创建的话就马上创建并绘制
+     *
+     * @return 已经被释放的块返回null
+     */
+    Bitmap obtainTile(int column, int row) {
+        int index = row * mColumnCount + column;
+        if (isTileDiscarded[index] || mChild == null) {
+            return null;
+        }
+        Bitmap tile = mTiles[index];
+        if (tile == null) {
+            tile = mTiles[index] = Bitmap.createBitmap(getTileWidth(column), getTileHeight(row), Bitmap.Config.ARGB_8888);
+            drawTile(tile, column, row);
+        }
+        return tile;
+    }
+
+    /**
+     * 释放某一块，之后也不会再创建
+     */
+    void discardTile(int column, int row) {
+        int index = row * mColumnCount + column;
+        isTileDiscarded[index] = true;
+        mTiles[index] = null;
+    }
+
+    /**
+     * 重绘所有已经创建的块 (子View内容有更新时)
+     */
+    void refresh() {
+        for (int row = 0; row < mRowCount; row++) {
+            for (int column = 0; column < mColumnCount; column++) {
+                Bitmap tile = mTiles[row * mColumnCount + column];
+                if (tile != null) {
+                    tile.eraseColor(Color.TRANSPARENT);
+                    drawTile(tile, column, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * 释放所有块
+     */
+    void release() {
+        for (int i = 0; i < mTiles.length; i++) {
+            mTiles[i] = null;
+        }
+        mChild = null;
+        mCanvas.setBitmap(null);
+    }
+
+    private void drawTile(Bitmap tile, int column, int row) {
+        mCanvas.setBitmap(tile);
+        int saveCount = mCanvas.save();
+        //只有这一块区域会被真正画到Bitmap上
+        mCanvas.translate(-column * mTileSize, -row * mTileSize);
+        mChild.draw(mCanvas);
+        mCanvas.restoreToCount(saveCount);
+        mCanvas.setBitmap(null);
+    }
+}
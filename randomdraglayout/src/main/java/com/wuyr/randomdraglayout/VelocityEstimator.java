@@ -0,0 +1,159 @@
+package com.wuyr.randomdraglayout;
+
+/**
+ * 基于环形缓冲区的速率估算 (用来代替VelocityTracker)
+ * 只保存基本类型的坐标和时间，添加采样点时不分配内存，
+ * 计算时对时间窗口内的采样点做最小二乘拟合 (一次或二次)，取最新时刻的导数作为速率
+ *
+ * @author wuyr
+ * @github https://github.com/wuyr/RandomDragLayout
+ * @since 2026-10-19
+ */
+class VelocityEstimator {
+
+    static final int CAPACITY = 20;//最多保存的采样点个数
+    private static final long STOPPED_GAP = 40L;//两个采样点间隔超过此时长 (ms)，则认为手指在中途停下过
+
+    private final float[] mXs = new float[CAPACITY];
+    private final float[] mYs = new float[CAPACITY];
+    private final long[] mTimes = new long[CAPACITY];
+    private int mNewest = -1;//最新采样点的下标
+    private int mSize;//当前采样点个数
+    private long mWindow;//时间窗口 (ms)
+    private int mFitOrder;//拟合阶数: 1 或 2
+    private float mXVelocity, mYVelocity;
+
+    VelocityEstimator() {
+        mWindow = 100L;
+        mFitOrder = 2;
+    }
+
+    /**
+     * 设置时间窗口，只有最新的采样点往前这段时间内的采样点会参与计算
+     *
+     * @param window 单位: 毫秒
+     */
+    void setWindow(long window) {
+        mWindow = Math.max(1L, window);
+    }
+
+    /**
+     * 设置拟合阶数
+     *
+     * @param order 1: 线性拟合 (匀速)，2: 二次拟合 (考虑加速度)
+     */
+    void setFitOrder(int order) {
+        mFitOrder = Math.max(1, Math.min(order, 2));
+    }
+
+    /**
+     * 添加采样点
+     *
+     * @param x    X轴坐标
+     * @param y    Y轴坐标
+     * @param time 时间 (ms)
+     */
+    void addMovement(float x, float y, long time) {
+        //时间倒流 (新的手势) 的话，之前的采样点都作废
+        if (mSize > 0 && time < mTimes[mNewest]) {
+            clear();
+        }
+        mNewest = (mNewest + 1) % CAPACITY;
+        mXs[mNewest] = x;
+        mYs[mNewest] = y;
+        mTimes[mNewest] = time;
+        if (mSize < CAPACITY) {
+            mSize++;
+        }
+    }
+
+    /**
+     * 清除所有采样点
+     */
+    void clear() {
+        mNewest = -1;
+        mSize = 0;
+        mXVelocity = 0;
+        mYVelocity = 0;
+    }
+
+    /**
+     * 计算当前速率，结果通过{@link #getXVelocity()}和{@link #getYVelocity()}获取
+     *
+     * @param units 速率的单位: 1表示 px/ms，1000表示 px/s
+     */
+    void computeCurrentVelocity(int units) {
+        mXVelocity = 0;
+        mYVelocity = 0;
+        if (mSize < 2) {
+            return;
+        }
+        long newestTime = mTimes[mNewest];
+        int count = 1;
+        //从新到旧，找出时间窗口内并且中途没有停顿过的采样点
+        for (int i = 1; i < mSize; i++) {
+            int index = (mNewest - i + CAPACITY) % CAPACITY;
+            int newerIndex = (index + 1) % CAPACITY;
+            if (newestTime - mTimes[index] > mWindow || mTimes[newerIndex] - mTimes[index] > STOPPED_GAP) {
+                break;
+            }
+            count++;
+        }
+        if (count < 2) {
+            return;
+        }
+        //采样点不够二次拟合的话，就用线性拟合
+        int order = count > 2 ? mFitOrder : 1;
+        mXVelocity = fit(mXs, count, order) * units;
+        mYVelocity = fit(mYs, count, order) * units;
+    }
+
+    float getXVelocity() {
+        return mXVelocity;
+    }
+
+    float getYVelocity() {
+        return mYVelocity;
+    }
+
+    /**
+     * 对最新的count个采样点做最小二乘拟合，返回最新时刻的一阶导数
+     * 时间以最新的采样点为原点 (都是负数)，坐标以最新采样点的坐标为原点，减少精度损失
+     *
+     * @return 速率 (px/ms)
+     */
+    private float fit(float[] values, int count, int order) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0;
+        double r0 = 0, r1 = 0, r2 = 0;
+        long newestTime = mTimes[mNewest];
+        float newestValue = values[mNewest];
+        for (int i = 0; i < count; i++) {
+            int index = (mNewest - i + CAPACITY) % CAPACITY;
+            double t = mTimes[index] - newestTime;
+            double v = values[index] - newestValue;
+            double t2 = t * t;
+            s0 += 1;
+            s1 += t;
+            s2 += t2;
+            s3 += t2 * t;
+            s4 += t2 * t2;
+            r0 += v;
+            r1 += t * v;
+            r2 += t2 * v;
+        }
+        if (order == 2) {
+            //解 3x3 的法方程: [s0 s1 s2; s1 s2 s3; s2 s3 s4] * [a b c] = [r0 r1 r2]，只需要b
+            double determinant = s0 * (s2 * s4 - s3 * s3) - s1 * (s1 * s4 - s3 * s2) + s2 * (s1 * s3 - s2 * s2);
+            if (Math.abs(determinant) > 1E-9) {
+                double b = (s0 * (r1 * s4 - s3 * r2) - r0 * (s1 * s4 - s3 * s2) + s2 * (s1 * r2 - r1 * s2)) / determinant;
+                return (float) b;
+            }
+        }
+        //线性拟合的斜率
+        double denominator = s0 * s2 - s1 * s1;
+        if (Math.abs(denominator) < 1E-9) {
+            return 0;
+        }
+        return (float) ((s0 * r1 - s1 * r0) / denominator);
+    }
+}
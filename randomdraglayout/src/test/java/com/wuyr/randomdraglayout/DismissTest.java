@@ -0,0 +1,193 @@
+package com.wuyr.randomdraglayout;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 代码触发移除 (dismiss / dismissAll) 的测试：
+ * 用{@link FrameDriver}逐帧推进，并按框架的规则模拟computeScroll和GhostView的绘制
+ *
+ * @author wuyr
+ * @github https://github.com/wuyr/RandomDragLayout
+ * @since 2026-10-19
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+@Config(sdk = 28, qualifiers = "w411dp-h731dp-xxhdpi")
+public class DismissTest {
+
+    private static final int MAX_FRAMES = 300;//最多模拟的帧数
+    private static final int LAYOUT_COUNT = 3;
+
+    private FrameDriver mFrameDriver;
+    private List<RandomDragLayout> mLayouts;
+    private List<FrameDriver.InvalidationTracker> mTrackers;
+    private int mDismissedCount;
+    private boolean isBatchFinished;
+
+    private final RandomDragLayout.OnDismissListener mOnDismissListener = new RandomDragLayout.OnDismissListener() {
+        @Override
+        public void onDismissed(int dismissedCount) {
+            mDismissedCount = dismissedCount;
+            isBatchFinished = true;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        mFrameDriver = new FrameDriver(activity);
+
+        LinearLayout container = new LinearLayout(activity);
+        container.setOrientation(LinearLayout.VERTICAL);
+        mLayouts = new ArrayList<>();
+        for (int i = 0; i < LAYOUT_COUNT; i++) {
+            View child = new View(activity);
+            child.setBackgroundColor(Color.BLUE);
+            RandomDragLayout layout = new RandomDragLayout(activity);
+            layout.addView(child, new ViewGroup.MarginLayoutParams(200, 100));
+            container.addView(layout, new LinearLayout.LayoutParams(
+                    ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+            mLayouts.add(layout);
+        }
+        activity.setContentView(container);
+        mFrameDriver.advance();
+
+        mTrackers = new ArrayList<>();
+        for (RandomDragLayout layout : mLayouts) {
+            mTrackers.add(new FrameDriver.InvalidationTracker(layout));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        //确保调度器中没有残留的任务 (调度器是全局单例)
+        for (RandomDragLayout layout : mLayouts) {
+            layout.recycle();
+        }
+        mFrameDriver.advance();
+        RandomDragLayout.setDismissFrameBudget(8F);
+    }
+
+    @Test
+    public void dismissOrientation_fliesOutOfScreen() {
+        final RandomDragLayout layout = mLayouts.get(0);
+        //GhostView移除后getTargetOrientation()会返回-1，所以在开始位移动画时记录
+        final int[] fleeingOrientation = {-1};
+        layout.setOnStateChangeListener(new RandomDragLayout.OnStateChangeListener() {
+            @Override
+            public void onStateChanged(int newState) {
+                if (newState == RandomDragLayout.STATE_FLEEING) {
+                    fleeingOrientation[0] = layout.getTargetOrientation();
+                }
+            }
+        });
+        RandomDragLayout.dismissAll(Arrays.asList(layout), RandomDragLayout.ORIENTATION_LEFT, mOnDismissListener);
+        runUntilBatchFinished();
+
+        assertEquals(1, mDismissedCount);
+        //移除前就开始渐变的话，最终状态会是STATE_GONE
+        assertEquals(RandomDragLayout.STATE_OUT_OF_SCREEN, layout.getState());
+        assertEquals(RandomDragLayout.ORIENTATION_LEFT, fleeingOrientation[0]);
+        assertEquals(0, mFrameDriver.countGhostViews());
+    }
+
+    @Test
+    public void dismissVelocity_staggersSnapshotsAndFlingsOutOfScreen() {
+        RandomDragLayout.setDismissFrameBudget(0F);
+        RandomDragLayout.dismissAll(mLayouts, 20000F, 0F, mOnDismissListener);
+
+        //预算为0时，每帧只创建一个快照
+        frame();
+        assertEquals(1, mFrameDriver.countGhostViews());
+        frame();
+        assertEquals(2, mFrameDriver.countGhostViews());
+
+        runUntilBatchFinished();
+        assertEquals(LAYOUT_COUNT, mDismissedCount);
+        for (RandomDragLayout layout : mLayouts) {
+            assertEquals(RandomDragLayout.STATE_OUT_OF_SCREEN, layout.getState());
+        }
+        assertEquals(0, mFrameDriver.countGhostViews());
+    }
+
+    @Test
+    public void recycleMidBatch_countsAsSkipped_andIsNotDismissedLater() {
+        RandomDragLayout.setDismissFrameBudget(0F);
+        RandomDragLayout.dismissAll(mLayouts, RandomDragLayout.ORIENTATION_RIGHT, mOnDismissListener);
+
+        //第一个已经创建了快照，第三个还在排队
+        frame();
+        RandomDragLayout prepared = mLayouts.get(0), pending = mLayouts.get(2);
+        prepared.recycle();
+        pending.recycle();
+
+        runUntilBatchFinished();
+        assertEquals(1, mDismissedCount);
+        assertEquals(RandomDragLayout.STATE_OUT_OF_SCREEN, mLayouts.get(1).getState());
+
+        //继续推进几帧，被回收的布局不能再被移除
+        for (int i = 0; i < 10; i++) {
+            frame();
+        }
+        for (RandomDragLayout layout : Arrays.asList(prepared, pending)) {
+            assertEquals(RandomDragLayout.STATE_NORMAL, layout.getState());
+            assertEquals(View.VISIBLE, layout.getChildAt(0).getVisibility());
+        }
+        assertEquals(0, mFrameDriver.countGhostViews());
+    }
+
+    @Test
+    public void dismissAll_emptyOrSkipped_reportsImmediately() {
+        RandomDragLayout.dismissAll(new ArrayList<RandomDragLayout>(), RandomDragLayout.ORIENTATION_TOP, mOnDismissListener);
+        assertTrue(isBatchFinished);
+        assertEquals(0, mDismissedCount);
+
+        isBatchFinished = false;
+        mLayouts.get(0).getChildAt(0).setVisibility(View.GONE);
+        RandomDragLayout.dismissAll(Arrays.asList(mLayouts.get(0)), RandomDragLayout.ORIENTATION_TOP, mOnDismissListener);
+        runUntilBatchFinished();
+        assertEquals(0, mDismissedCount);
+        assertNull(mFrameDriver.findGhostView());
+    }
+
+    private void runUntilBatchFinished() {
+        for (int i = 0; i < MAX_FRAMES && !isBatchFinished; i++) {
+            frame();
+        }
+        assertTrue("batch never finished", isBatchFinished);
+    }
+
+    /**
+     * 模拟一帧：先推进时钟，再对被invalidate的布局调用computeScroll，最后绘制所有的GhostView
+     */
+    private void frame() {
+        mFrameDriver.advance();
+        for (int i = 0; i < LAYOUT_COUNT; i++) {
+            if (mTrackers.get(i).isInvalidated()) {
+                mLayouts.get(i).computeScroll();
+            }
+        }
+        mFrameDriver.drawGhostViews();
+    }
+}
@@ -0,0 +1,352 @@
+package com.wuyr.randomdraglayout;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 帧预算基准测试：用{@link FrameDriver}逐帧驱动RandomDragLayout走完
+ * 拖动 -> 惯性移动 -> 渐变消失 和 拖动 -> 位移动画 -> 移出屏幕 两条路径，
+ * 分阶段统计耗时和内存分配，并把结果以JSON格式输出到 randomdraglayout.benchmark.dir 目录
+ * 耗时较长，默认跳过，需要用 -Pbenchmark 开启：
+ * ./gradlew :randomdraglayout:testDebugUnitTest -Pbenchmark --tests '*FrameBudgetBenchmarkTest'
+ * 注意：Robolectric 4.3.1 只有LEGACY图形模式，Canvas不会真正光栅化，
+ * 所以snapshot和ghostDraw的耗时不代表真机上的绘制开销，只能用来对比分配和调用次数的变化
+ *
+ * @author wuyr
+ * @github https://github.com/wuyr/RandomDragLayout
+ * @since 2026-10-19
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+@Config(sdk = 28, qualifiers = "w411dp-h731dp-xxhdpi")
+public class FrameBudgetBenchmarkTest {
+
+    private static final long FRAME_BUDGET_NANOS = 16_666_667L;//60fps下每帧的预算
+    private static final int MAX_FRAMES = 300;//每条路径最多模拟的帧数
+    private static final int DRAG_STEPS = 12;//每次拖动的MOVE事件个数
+    private static final int WARMUP_ROUNDS = 1;
+    private static final int MEASURE_ROUNDS = Integer.getInteger("randomdraglayout.benchmark.rounds", 3);
+    private static final String GRAPHICS_MODE = "LEGACY";//Robolectric 4.3.1 的图形模式 (不光栅化)
+
+    private static final String PHASE_SNAPSHOT = "snapshot";
+    private static final String PHASE_UPDATE_OFFSET = "updateOffset";
+    private static final String PHASE_DRAG_FRAME = "dragFrame";
+    private static final String PHASE_ANIMATION_UPDATE = "onAnimationUpdate";
+    private static final String PHASE_COMPUTE_SCROLL = "computeScroll";
+    private static final String PHASE_GHOST_DRAW = "ghostDraw";
+    private static final String PHASE_GHOST_REMOVAL = "ghostRemoval";
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{0}x{1} period={2}")
+    public static Collection<Object[]> parameters() {
+        int[][] sizes = {{240, 160}, {720, 480}, {1080, 1920}};
+        long[] periods = {0L, 16L, 33L};
+        List<Object[]> parameters = new ArrayList<>();
+        for (int[] size : sizes) {
+            for (long period : periods) {
+                parameters.add(new Object[]{size[0], size[1], period});
+            }
+        }
+        return parameters;
+    }
+
+    private final int mChildWidth, mChildHeight;
+    private final long mRefreshPeriod;
+    private RandomDragLayout mLayout;
+    private FrameDriver mFrameDriver;
+    private Meter mMeter;
+
+    public FrameBudgetBenchmarkTest(int childWidth, int childHeight, long refreshPeriod) {
+        mChildWidth = childWidth;
+        mChildHeight = childHeight;
+        mRefreshPeriod = refreshPeriod;
+    }
+
+    @Before
+    public void setUp() {
+        assumeTrue("benchmark disabled, run with -Pbenchmark", Boolean.getBoolean("randomdraglayout.benchmark"));
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        mFrameDriver = new FrameDriver(activity);
+        mMeter = new Meter();
+
+        View child = new View(activity);
+        child.setBackgroundColor(Color.BLUE);
+        mLayout = new RandomDragLayout(activity);
+        mLayout.addView(child, new ViewGroup.MarginLayoutParams(mChildWidth, mChildHeight));
+        mLayout.setChildRefreshPeriod(mRefreshPeriod);
+        activity.setContentView(mLayout, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        mFrameDriver.advance();
+    }
+
+    @After
+    public void tearDown() {
+        //被跳过时没有初始化
+        if (mLayout != null) {
+            settle();
+        }
+    }
+
+    @Test
+    public void dragFlingFade_and_dragFleeOutOfScreen() throws IOException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runPath(true, null);
+            runPath(false, null);
+        }
+        PathResult fling = new PathResult(RandomDragLayout.STATE_GONE);
+        PathResult flee = new PathResult(RandomDragLayout.STATE_OUT_OF_SCREEN);
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            runPath(true, fling);
+            runPath(false, flee);
+        }
+        assertEquals("fling path did not fade out", MEASURE_ROUNDS, fling.completedRounds);
+        assertEquals("flee path did not leave the screen", MEASURE_ROUNDS, flee.completedRounds);
+        writeResult(fling, flee);
+    }
+
+    /**
+     * 走完一条完整路径
+     *
+     * @param fling  是否以惯性移动结束拖动
+     * @param result 统计结果，为null时表示预热，不做记录
+     */
+    private void runPath(boolean fling, PathResult result) {
+        settle();
+        float step = fling ? 60F : 3F;//快速拖动触发惯性移动，慢速拖动则触发非惯性移动
+        float x = mChildWidth / 2F, y = mChildHeight / 2F;
+        long downTime = SystemClock.uptimeMillis();
+
+        mMeter.begin();
+        dispatch(downTime, MotionEvent.ACTION_DOWN, x, y);
+        mMeter.end(result, PHASE_SNAPSHOT);
+
+        for (int i = 0; i < DRAG_STEPS; i++) {
+            mMeter.begin();
+            mFrameDriver.advance();
+            mMeter.end(result, PHASE_DRAG_FRAME);
+            x += step;
+            y += step / 2;
+            mMeter.begin();
+            dispatch(downTime, MotionEvent.ACTION_MOVE, x, y);
+            mMeter.end(result, PHASE_UPDATE_OFFSET);
+        }
+        dispatch(downTime, MotionEvent.ACTION_UP, x, y);
+
+        int frames = 0;
+        FrameDriver.InvalidationTracker tracker = new FrameDriver.InvalidationTracker(mLayout);
+        View ghost = mFrameDriver.findGhostView();
+        while (ghost != null && frames++ < MAX_FRAMES) {
+            boolean fleeing = mLayout.getState() == RandomDragLayout.STATE_FLEEING;
+            mMeter.begin();
+            mFrameDriver.advance();
+            ghost = mFrameDriver.findGhostView();
+            mMeter.end(result, ghost == null ? PHASE_GHOST_REMOVAL
+                    : fleeing ? PHASE_ANIMATION_UPDATE : PHASE_DRAG_FRAME);
+            if (ghost == null) {
+                break;
+            }
+            //Robolectric不会真正渲染，这里手动模拟一帧的绘制流程
+            if (tracker.isInvalidated()) {
+                mMeter.begin();
+                mLayout.computeScroll();
+                mMeter.end(result, PHASE_COMPUTE_SCROLL);
+            }
+            mMeter.begin();
+            mFrameDriver.draw(ghost);
+            mMeter.end(result, PHASE_GHOST_DRAW);
+        }
+        if (result != null) {
+            result.frames += frames;
+            result.finalState = mLayout.getState();
+            if (ghost == null && result.finalState == result.expectedState) {
+                result.completedRounds++;
+            }
+        }
+    }
+
+    /**
+     * 推进时钟，直到所有动画结束并重置成功
+     */
+    private void settle() {
+        FrameDriver.InvalidationTracker tracker = new FrameDriver.InvalidationTracker(mLayout);
+        for (int i = 0; i < MAX_FRAMES && !mLayout.reset(); i++) {
+            mFrameDriver.advance();
+            if (tracker.isInvalidated()) {
+                mLayout.computeScroll();
+            }
+        }
+        assertNull(mFrameDriver.findGhostView());
+    }
+
+    private void dispatch(long downTime, int action, float x, float y) {
+        MotionEvent event = MotionEvent.obtain(downTime, SystemClock.uptimeMillis(), action, x, y, 0);
+        mLayout.dispatchTouchEvent(event);
+        event.recycle();
+    }
+
+    private void writeResult(PathResult fling, PathResult flee) throws IOException {
+        File dir = new File(System.getProperty("randomdraglayout.benchmark.dir", "build/benchmark-results"));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        StringBuilder json = new StringBuilder();
+        json.append("{\"benchmark\":\"frame-budget\"")
+                .append(",\"version\":\"").append(System.getProperty("randomdraglayout.version", "unknown")).append('"')
+                .append(",\"childWidth\":").append(mChildWidth)
+                .append(",\"childHeight\":").append(mChildHeight)
+                .append(",\"refreshPeriod\":").append(mRefreshPeriod)
+                .append(",\"frameIntervalMs\":").append(FrameDriver.FRAME_INTERVAL)
+                .append(",\"frameBudgetNanos\":").append(FRAME_BUDGET_NANOS)
+                .append(",\"rounds\":").append(MEASURE_ROUNDS)
+                .append(",\"graphicsMode\":\"").append(GRAPHICS_MODE).append('"')
+                .append(",\"allocationSupported\":").append(mMeter.isAllocationSupported())
+                .append(",\"paths\":{\"fling\":");
+        fling.appendTo(json);
+        json.append(",\"flee\":");
+        flee.appendTo(json);
+        json.append("}}\n");
+
+        File file = new File(dir, String.format(Locale.US, "frame-budget_%dx%d_p%d.json",
+                mChildWidth, mChildHeight, mRefreshPeriod));
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            writer.write(json.toString());
+        }
+    }
+
+    /**
+     * 单条路径的统计结果
+     */
+    private static class PathResult {
+        final Map<String, PhaseStats> phases = new LinkedHashMap<>();
+        final int expectedState;//每一轮结束时应该处于的状态
+        int frames;
+        int finalState = -1;
+        int completedRounds;
+
+        PathResult(int expectedState) {
+            this.expectedState = expectedState;
+        }
+
+        void record(String phase, long nanos, long bytes) {
+            PhaseStats stats = phases.get(phase);
+            if (stats == null) {
+                phases.put(phase, stats = new PhaseStats());
+            }
+            stats.count++;
+            stats.totalNanos += nanos;
+            stats.maxNanos = Math.max(stats.maxNanos, nanos);
+            stats.totalBytes += bytes;
+            if (nanos > FRAME_BUDGET_NANOS) {
+                stats.overBudget++;
+            }
+        }
+
+        void appendTo(StringBuilder json) {
+            json.append("{\"expectedState\":").append(expectedState)
+                    .append(",\"finalState\":").append(finalState)
+                    .append(",\"frames\":").append(frames)
+                    .append(",\"completedRounds\":").append(completedRounds)
+                    .append(",\"phases\":{");
+            boolean first = true;
+            for (Map.Entry<String, PhaseStats> entry : phases.entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                PhaseStats stats = entry.getValue();
+                json.append('"').append(entry.getKey()).append("\":{")
+                        .append("\"count\":").append(stats.count)
+                        .append(",\"totalNanos\":").append(stats.totalNanos)
+                        .append(",\"meanNanos\":").append(stats.totalNanos / stats.count)
+                        .append(",\"maxNanos\":").append(stats.maxNanos)
+                        .append(",\"overBudget\":").append(stats.overBudget)
+                        .append(",\"totalBytes\":").append(stats.totalBytes)
+                        .append(",\"meanBytes\":").append(stats.totalBytes / stats.count)
+                        .append('}');
+            }
+            json.append("}}");
+        }
+    }
+
+    private static class PhaseStats {
+        int count;
+        int overBudget;
+        long totalNanos;
+        long maxNanos;
+        long totalBytes;
+    }
+
+    /**
+     * 计时 + 当前线程的内存分配统计 (仅HotSpot支持分配统计，不支持时记为0)
+     */
+    private static class Meter {
+        private final com.sun.management.ThreadMXBean mAllocationBean;
+        private final long mThreadId = Thread.currentThread().getId();
+        private long mStartNanos, mStartBytes;
+
+        Meter() {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            com.sun.management.ThreadMXBean allocationBean = null;
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                allocationBean = (com.sun.management.ThreadMXBean) bean;
+                if (allocationBean.isThreadAllocatedMemorySupported()) {
+                    allocationBean.setThreadAllocatedMemoryEnabled(true);
+                } else {
+                    allocationBean = null;
+                }
+            }
+            mAllocationBean = allocationBean;
+        }
+
+        boolean isAllocationSupported() {
+            return mAllocationBean != null;
+        }
+
+        void begin() {
+            mStartBytes = allocatedBytes();
+            mStartNanos = System.nanoTime();
+        }
+
+        void end(PathResult result, String phase) {
+            long nanos = System.nanoTime() - mStartNanos;
+            long bytes = allocatedBytes() - mStartBytes;
+            if (result != null) {
+                result.record(phase, nanos, bytes);
+            }
+        }
+
+        private long allocatedBytes() {
+            return mAllocationBean == null ? 0 : mAllocationBean.getThreadAllocatedBytes(mThreadId);
+        }
+    }
+}
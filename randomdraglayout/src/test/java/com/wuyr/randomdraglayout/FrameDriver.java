@@ -0,0 +1,146 @@
+package com.wuyr.randomdraglayout;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Looper;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 测试用的帧驱动 (需要配合 LooperMode.PAUSED 使用)：
+ * Robolectric不会真正渲染，这里用受控的Looper/Choreographer时钟逐帧推进，
+ * 并按框架的规则手动模拟computeScroll和GhostView的绘制
+ *
+ * @author wuyr
+ * @github https://github.com/wuyr/RandomDragLayout
+ * @since 2026-10-19
+ */
+final class FrameDriver {
+
+    static final long FRAME_INTERVAL = 16L;//模拟的帧间隔 (ms)
+
+    private final ViewGroup mDecorView;
+    private final ShadowLooper mLooper;
+    private Canvas mFrameCanvas;
+
+    FrameDriver(Activity activity) {
+        mDecorView = (ViewGroup) activity.getWindow().getDecorView();
+        mLooper = shadowOf(Looper.getMainLooper());
+    }
+
+    /**
+     * 推进一帧的时钟 (Choreographer回调、动画、post的任务)
+     */
+    void advance() {
+        mLooper.idleFor(FRAME_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 查找最上层的GhostView
+     *
+     * @return 没有时为null
+     */
+    GhostView findGhostView() {
+        for (int i = mDecorView.getChildCount() - 1; i >= 0; i--) {
+            View child = mDecorView.getChildAt(i);
+            if (child instanceof GhostView) {
+                layoutGhostView(child);
+                return (GhostView) child;
+            }
+        }
+        return null;
+    }
+
+    int countGhostViews() {
+        int count = 0;
+        for (int i = 0; i < mDecorView.getChildCount(); i++) {
+            if (mDecorView.getChildAt(i) instanceof GhostView) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 绘制一个GhostView
+     */
+    void draw(View ghost) {
+        layoutGhostView(ghost);
+        if (mFrameCanvas == null) {
+            //等DecorView完成布局后再创建
+            mFrameCanvas = new Canvas(Bitmap.createBitmap(Math.max(mDecorView.getWidth(), 1),
+                    Math.max(mDecorView.getHeight(), 1), Bitmap.Config.ARGB_8888));
+        }
+        ghost.draw(mFrameCanvas);
+    }
+
+    /**
+     * 绘制所有的GhostView (绘制过程中可能会被移除，所以倒序遍历)
+     */
+    void drawGhostViews() {
+        for (int i = mDecorView.getChildCount() - 1; i >= 0; i--) {
+            View child = mDecorView.getChildAt(i);
+            if (child instanceof GhostView) {
+                draw(child);
+            }
+        }
+    }
+
+    /**
+     * 未完成布局时手动布局，保证越界检测使用的是屏幕尺寸
+     */
+    private void layoutGhostView(View ghost) {
+        if (ghost.getWidth() == 0 || ghost.getHeight() == 0) {
+            ghost.measure(View.MeasureSpec.makeMeasureSpec(mDecorView.getWidth(), View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(mDecorView.getHeight(), View.MeasureSpec.EXACTLY));
+            ghost.layout(0, 0, mDecorView.getWidth(), mDecorView.getHeight());
+        }
+    }
+
+    /**
+     * 记录布局在上一帧的状态，用来判断框架在这一帧会不会调用它的computeScroll
+     */
+    static final class InvalidationTracker {
+
+        private final RandomDragLayout mLayout;
+        private boolean wasChildHidden;
+        private int mLastState;
+
+        InvalidationTracker(RandomDragLayout layout) {
+            mLayout = layout;
+            wasChildHidden = isChildHidden();
+            mLastState = layout.getState();
+        }
+
+        /**
+         * 只有布局被invalidate后，框架才会在下一帧调用它的computeScroll：
+         * 子View刚被隐藏时 (GhostView刚显示)，
+         * 惯性移动过程中 (computeScroll里会继续invalidate，渐变动画开始后惯性移动已经结束)，
+         * 以及刚移出屏幕时 (onOutOfScreen里调用了invalidate)
+         * 位移动画只会重绘GhostView，不会触发布局的computeScroll
+         * 每帧只能调用一次
+         */
+        boolean isInvalidated() {
+            boolean isChildHidden = isChildHidden();
+            int state = mLayout.getState();
+            GhostView ghost = mLayout.getGhostView();
+            boolean invalidated = (isChildHidden && !wasChildHidden)
+                    || (state == RandomDragLayout.STATE_FLINGING && ghost != null && ghost.getAlpha() == 1F)
+                    || (state == RandomDragLayout.STATE_OUT_OF_SCREEN && mLastState != RandomDragLayout.STATE_OUT_OF_SCREEN);
+            wasChildHidden = isChildHidden;
+            mLastState = state;
+            return invalidated;
+        }
+
+        private boolean isChildHidden() {
+            return mLayout.getChildCount() > 0 && mLayout.getChildAt(0).getVisibility() != View.VISIBLE;
+        }
+    }
+}
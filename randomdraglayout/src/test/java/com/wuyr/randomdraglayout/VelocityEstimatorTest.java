@@ -0,0 +1,116 @@
+package com.wuyr.randomdraglayout;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * VelocityEstimator 单元测试
+ *
+ * @author wuyr
+ * @github https://github.com/wuyr/RandomDragLayout
+ * @since 2026-10-19
+ */
+public class VelocityEstimatorTest {
+
+    private static final float DELTA = 1F;
+
+    private VelocityEstimator mEstimator;
+
+    @Before
+    public void setUp() {
+        mEstimator = new VelocityEstimator();
+    }
+
+    @Test
+    public void constantVelocity_linearAndQuadraticAgree() {
+        //每16ms移动 X:+32px, Y:-16px，即 2000px/s 和 -1000px/s
+        for (int order = 1; order <= 2; order++) {
+            mEstimator.clear();
+            mEstimator.setFitOrder(order);
+            for (int i = 0; i < 8; i++) {
+                mEstimator.addMovement(100 + i * 32, 500 - i * 16, 1000 + i * 16);
+            }
+            mEstimator.computeCurrentVelocity(1000);
+            assertEquals(2000F, mEstimator.getXVelocity(), DELTA);
+            assertEquals(-1000F, mEstimator.getYVelocity(), DELTA);
+        }
+    }
+
+    @Test
+    public void units_scaleResult() {
+        for (int i = 0; i < 5; i++) {
+            mEstimator.addMovement(i * 10, 0, i * 10);
+        }
+        mEstimator.computeCurrentVelocity(500);
+        assertEquals(500F, mEstimator.getXVelocity(), DELTA);
+    }
+
+    @Test
+    public void samplesOutsideWindow_areIgnored() {
+        mEstimator.setWindow(50);
+        mEstimator.setFitOrder(1);
+        //先快速移动，再慢速移动：只有窗口内的慢速部分参与计算
+        long time = 0;
+        float x = 0;
+        for (int i = 0; i < 10; i++, time += 10) {
+            mEstimator.addMovement(x += 50, 0, time);
+        }
+        for (int i = 0; i < 6; i++, time += 10) {
+            mEstimator.addMovement(x += 1, 0, time);
+        }
+        mEstimator.computeCurrentVelocity(1000);
+        assertEquals(100F, mEstimator.getXVelocity(), DELTA);
+    }
+
+    @Test
+    public void pauseBeforeRelease_givesZeroVelocity() {
+        for (int i = 0; i < 5; i++) {
+            mEstimator.addMovement(i * 40, 0, i * 10);
+        }
+        //停顿超过40ms后松手 (位置不变)
+        mEstimator.addMovement(160, 0, 200);
+        mEstimator.computeCurrentVelocity(1000);
+        assertEquals(0F, mEstimator.getXVelocity(), 0F);
+    }
+
+    @Test
+    public void quadraticFit_tracksAcceleration() {
+        mEstimator.setFitOrder(2);
+        //x = t^2 / 10 (t: ms)，最新时刻 t=80 的速率为 16px/ms
+        for (int t = 0; t <= 80; t += 10) {
+            mEstimator.addMovement(t * t / 10F, 0, t);
+        }
+        mEstimator.computeCurrentVelocity(1);
+        assertEquals(16F, mEstimator.getXVelocity(), .01F);
+    }
+
+    @Test
+    public void ringBuffer_keepsNewestSamples() {
+        mEstimator.setWindow(1000);
+        mEstimator.setFitOrder(1);
+        //超过容量后，最早的 (速率不同的) 采样点会被覆盖
+        long time = 0;
+        float x = 0;
+        for (int i = 0; i < VelocityEstimator.CAPACITY; i++, time += 10) {
+            mEstimator.addMovement(x += 100, 0, time);
+        }
+        for (int i = 0; i < VelocityEstimator.CAPACITY; i++, time += 10) {
+            mEstimator.addMovement(x += 5, 0, time);
+        }
+        mEstimator.computeCurrentVelocity(1000);
+        assertEquals(500F, mEstimator.getXVelocity(), DELTA);
+    }
+
+    @Test
+    public void newGesture_clearsPreviousSamples() {
+        for (int i = 0; i < 5; i++) {
+            mEstimator.addMovement(i * 100, 0, 1000 + i * 10);
+        }
+        //时间倒流，视为新的手势
+        mEstimator.addMovement(0, 0, 10);
+        mEstimator.computeCurrentVelocity(1000);
+        assertEquals(0F, mEstimator.getXVelocity(), 0F);
+    }
+}